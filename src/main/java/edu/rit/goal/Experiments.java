@@ -253,6 +253,10 @@ public class Experiments {
 
 		// Others
 		boolean onlyHead;
+		// Whether the visitors count what each step of their searches does; it is reported per rule.
+		boolean instrumented;
+		// Matching calls and CPU time (ns) of each exact metric of a rule; zero for no limit.
+		long maxMatchingCalls, maxMatchingTime;
 
 		@Override
 		public String toString() {
@@ -262,7 +266,9 @@ public class Experiments {
 					+ useRwConf + ", useRwLength=" + useRwLength + ", useRwPredSize=" + useRwPredSize + ", useRwF1="
 					+ useRwF1 + ", useRwEffort=" + useRwEffort + ", windowSize=" + windowSize + ", usePrfLength="
 					+ usePrfLength + ", usePrfHead=" + usePrfHead + ", usePrfNumberOfVars=" + usePrfNumberOfVars
-					+ ", usePrfNumberOfPreds=" + usePrfNumberOfPreds + ", onlyHead=" + onlyHead + "]";
+					+ ", usePrfNumberOfPreds=" + usePrfNumberOfPreds + ", onlyHead=" + onlyHead
+					+ ", instrumented=" + instrumented + ", maxMatchingCalls=" + maxMatchingCalls + ", maxMatchingTime="
+					+ maxMatchingTime + "]";
 		}
 
 	}
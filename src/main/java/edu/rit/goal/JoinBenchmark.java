@@ -0,0 +1,125 @@
+package edu.rit.goal;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.jgrapht.graph.DirectedMultigraph;
+
+import edu.rit.goal.Experiments.Dataset;
+import edu.rit.goal.graph.GraphDatabase;
+import edu.rit.goal.graph.LabeledEdge;
+import edu.rit.goal.graph.LanguageBias;
+import edu.rit.goal.graph.RandomWalk;
+import edu.rit.goal.graph.RandomWalk.Walk;
+import edu.rit.goal.metric.RuleSupport;
+import edu.rit.goal.visitor.ExactRuleMetricListener;
+import edu.rit.goal.visitor.GraphVisitor;
+import edu.rit.goal.visitor.Matcher.Engine;
+import edu.rit.goal.visitor.PlanReport;
+import edu.rit.goal.visitor.RuleMetricFactory;
+import edu.rit.goal.visitor.RuleMetricListener;
+
+// Compares the engines of the matcher computing the exact support of closed rules of length 3 and 4 found by random
+// walks. Every rule is run with every engine, and with backtracking and adaptive order; supports must be the same. The
+// plans that adaptive order picked are reported with the costs that were estimated and the actual ones.
+public class JoinBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		final String datasetsFolder = args[0];
+		final int number = Integer.valueOf(args[1]), rulesPerLength = Integer.valueOf(args[2]);
+		final Integer split = args.length > 3 ? Integer.valueOf(args[3]) : 0;
+
+		Dataset dataset = Experiments.resolveDataset(number);
+
+		System.out.println(new Date() + " -- Started: " + dataset);
+
+		GraphDatabase db = KGToGraphDatabase.load(datasetsFolder, dataset, split);
+
+		for (int length : List.of(3, 4)) {
+			List<Walk> rules = getClosedRules(db, split, length, rulesPerLength);
+
+			System.out.println(new Date() + " -- Length: " + length + "; rules: " + rules.size());
+
+			// The last one is adaptive order.
+			// The last one is adaptive order.
+			long[] totalTimes = new long[Engine.values().length + 1];
+
+			for (Walk walk : rules) {
+				DirectedMultigraph<Integer, LabeledEdge> rule = walk.walk;
+				LabeledEdge head = walk.head;
+
+				StringBuffer line = new StringBuffer("\t" + rule.edgeSet().size() + " atoms");
+				BigDecimal previous = null;
+
+				PlanReport report = null;
+
+				for (int i = 0; i < totalTimes.length; i++) {
+					GraphVisitor visitor = new GraphVisitor(db, rule, head, split);
+
+					if (i < Engine.values().length)
+						visitor.setEngine(Engine.values()[i]);
+					else {
+						visitor.setAdaptiveOrder(true);
+						visitor.setReporting(true);
+						report = visitor.getPlanReport();
+					}
+
+					RuleMetricListener listener = new ExactRuleMetricListener(new RuleSupport(visitor.getHeadSize()));
+
+					long start = System.nanoTime();
+					RuleMetricFactory.getExactSupport(visitor).compute(List.of(listener));
+					long time = System.nanoTime() - start;
+
+					totalTimes[i] += time;
+
+					RuleSupport support = (RuleSupport) listener.getMetric();
+					if (previous != null && support.support.compareTo(previous) != 0)
+						throw new RuntimeException("Engines disagree on the support of rule " + rule + "!");
+					previous = support.support;
+
+					line.append("; " + getName(i) + ": " + time / 1000000 + " ms (support: " + support.support + ")");
+				}
+
+				System.out.println(line);
+				System.out.print(report.toString().indent(8));
+			}
+
+			for (int i = 0; i < totalTimes.length; i++)
+				System.out.println(
+						new Date() + " -- Length: " + length + "; " + getName(i) + ": " + totalTimes[i] / 1000000 + " ms");
+		}
+
+		System.out.println(new Date() + " -- Done");
+	}
+
+	private static String getName(int i) {
+		return i < Engine.values().length ? Engine.values()[i].toString() : "Adaptive";
+	}
+
+	// Walks are closed in the last step; variables are the entities that were visited, which is fine. With no head
+	// predicate, the first edge of the walk is the head.
+	private static List<Walk> getClosedRules(GraphDatabase db, Integer split, int length, int howMany) {
+		RandomWalk rw = new RandomWalk(db);
+		rw.setSplit(split);
+		rw.setLength(length);
+		rw.setForceClosing(true);
+
+		List<Walk> ret = new ArrayList<>();
+
+		for (int attempts = 0; ret.size() < howMany && attempts < howMany * 100; attempts++) {
+			Walk walk = rw.randomWalk();
+
+			if (walk.walk.edgeSet().size() == length && LanguageBias.getIsClosed().test(walk.walk)) {
+				if (walk.head == null)
+					walk.head = walk.walk.edgeSet().iterator().next();
+
+				ret.add(walk);
+			}
+		}
+
+		return ret;
+	}
+
+}
@@ -0,0 +1,104 @@
+package edu.rit.goal;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclipse.collections.api.factory.primitive.IntSets;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
+
+import edu.rit.goal.Experiments.Dataset;
+import edu.rit.goal.graph.GraphDatabase;
+import edu.rit.goal.graph.GraphDatabase.LoadPhase;
+import edu.rit.goal.graph.index.PredicateIndex;
+import edu.rit.goal.graph.index.PredicateIndexBuilder;
+
+// Same as KGToNeo4j but the triples go straight into the indexes of GraphDatabase; there is no Neo4j at all. The zip
+// is read once and every triple keeps its split. Triples are deduplicated like in KGToNeo4j, keeping the split of the
+// file where they show up first.
+public class KGToGraphDatabase {
+
+	public static void main(String[] args) throws Exception {
+		final String datasetsFolder = args[0], snapshotFolder = args[1];
+		final int number = Integer.valueOf(args[2]);
+
+		Dataset dataset = Experiments.resolveDataset(number);
+
+		System.out.println(new Date() + " -- Started: " + dataset);
+
+		GraphDatabase db = load(datasetsFolder, dataset, null);
+
+		// The same file GraphDatabase looks for next to the Neo4j folder.
+		db.writeSnapshot(GraphDatabase.getSnapshotFile(snapshotFolder + File.separator + dataset));
+
+		System.out.println(new Date() + " -- Load times (ms): " + db.getLoadTimes());
+
+		System.out.println(new Date() + " -- Done");
+	}
+
+	public static GraphDatabase load(String datasetsFolder, Dataset dataset, Integer split) throws Exception {
+		AtomicInteger currentSplit = new AtomicInteger(), filesRead = new AtomicInteger();
+
+		// The order in which the files of the splits are read, to know which repeated triple came first.
+		int[] splitRanks = new int[PredicateIndex.SPLITS];
+		Arrays.fill(splitRanks, Integer.MAX_VALUE);
+
+		MutableIntSet entities = IntSets.mutable.empty();
+		Map<String, PredicateIndexBuilder> builders = new HashMap<>();
+
+		TriFunction<Integer, String, Integer, Void> process = (s, p, o) -> {
+			if (s != null && p != null && o != null) {
+				// All the entities are there no matter the split.
+				entities.add(s);
+				entities.add(o);
+
+				builders.computeIfAbsent(p, k -> new PredicateIndexBuilder(splitRanks)).add(s, o,
+						currentSplit.get());
+			}
+
+			return null;
+		};
+
+		long start = System.currentTimeMillis();
+
+		String[] filesOfInterest = new String[] { "train2id.txt", "valid2id.txt", "test2id.txt" };
+
+		try (ZipFile zip = new ZipFile(new File(datasetsFolder + File.separator + dataset + ".zip"))) {
+			Iterator<? extends ZipEntry> it = zip.entries().asIterator();
+			while (it.hasNext()) {
+				ZipEntry entry = it.next();
+
+				if (Arrays.stream(filesOfInterest).anyMatch(f -> entry.getName().endsWith(f))) {
+					int entrySplit = KGToNeo4j.resolveSplit(entry);
+					currentSplit.set(entrySplit);
+					splitRanks[entrySplit] = Math.min(splitRanks[entrySplit], filesRead.getAndIncrement());
+
+					System.out.println("\t" + new Date() + " -- Reading " + entry.getName() + "...");
+
+					KGToNeo4j.processGZipFile(zip, entry, dataset, process);
+				}
+			}
+		}
+
+		long read = System.currentTimeMillis() - start;
+		start = System.currentTimeMillis();
+
+		// Repeated triples are removed when building.
+		Map<String, PredicateIndex> predicateIndexes = PredicateIndexBuilder.buildAll(builders);
+
+		long built = System.currentTimeMillis() - start;
+
+		// The given split is just the view we return; all the splits are there.
+		GraphDatabase db = new GraphDatabase(split, entities.toList(), predicateIndexes);
+		db.addLoadTime(LoadPhase.Triples, read);
+		db.addLoadTime(LoadPhase.Indexes, built);
+		return db;
+	}
+
+}
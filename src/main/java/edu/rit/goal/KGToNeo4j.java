@@ -115,14 +115,7 @@ public class KGToNeo4j {
 
 				if (Arrays.stream(filesOfInterest).anyMatch(f -> entry.getName().endsWith(f))) {
 					// We need to differentiate among splits.
-					if (entry.getName().contains("train"))
-						currentSplit.set(0);
-					
-					if (entry.getName().contains("valid"))
-						currentSplit.set(1);
-					
-					if (entry.getName().contains("test"))
-						currentSplit.set(2);
+					currentSplit.set(resolveSplit(entry));
 					
 					processGZipFile(zip, entry, dataset, processTriples);
 				}
@@ -148,7 +141,23 @@ public class KGToNeo4j {
 		service.shutdown();
 	}
 
-	private static void processGZipFile(ZipFile zip, ZipEntry entry, Dataset dataset,
+	// Train is 0, valid is 1 and test is 2.
+	static int resolveSplit(ZipEntry entry) {
+		int split = 0;
+
+		if (entry.getName().contains("train"))
+			split = 0;
+		
+		if (entry.getName().contains("valid"))
+			split = 1;
+		
+		if (entry.getName().contains("test"))
+			split = 2;
+
+		return split;
+	}
+
+	static void processGZipFile(ZipFile zip, ZipEntry entry, Dataset dataset,
 			TriFunction<Integer, String, Integer, Void> process) throws Exception {
 		Scanner sc = new Scanner(zip.getInputStream(entry));
 
@@ -42,6 +42,7 @@ import edu.rit.goal.estimator.Sampling;
 import edu.rit.goal.graph.GraphDatabase;
 import edu.rit.goal.graph.LabeledEdge;
 import edu.rit.goal.graph.LatticeGraph;
+import edu.rit.goal.graph.PredicateDictionary;
 import edu.rit.goal.metric.Rule;
 import edu.rit.goal.metric.RuleMetric;
 import edu.rit.goal.metric.RulePCAConfidence;
@@ -57,6 +58,7 @@ import edu.rit.goal.mining.reward.StaticProbabilityPolicy;
 import edu.rit.goal.visitor.EstimatedRuleMetricListener;
 import edu.rit.goal.visitor.ExactRuleMetricListener;
 import edu.rit.goal.visitor.GraphVisitor;
+import edu.rit.goal.visitor.MatchBudget;
 import edu.rit.goal.visitor.RuleMetricFactory;
 import edu.rit.goal.visitor.RuleMetricListener;
 import edu.rit.goal.visitor.confidence.EstimatedPCAConfidenceVisitor;
@@ -85,7 +87,7 @@ public class RuleMiningEstimates {
 		}
 	}
 
-	private synchronized static void printRuleToFile(Rule rule, String file) {
+	private synchronized static void printRuleToFile(Rule rule, PredicateDictionary dictionary, String file) {
 		try {
 			Map<Integer, String> mapToVar = new HashMap<>();
 			char lastVar = 'a';
@@ -98,7 +100,7 @@ public class RuleMiningEstimates {
 					mapToVar.put(v, "" + lastVar++);
 
 			Function<LabeledEdge, String> printAtom = e -> {
-				return e.predicate + "(" + mapToVar.get(rule.getRule().getEdgeSource(e)) + ", "
+				return dictionary.getName(e.predicate) + "(" + mapToVar.get(rule.getRule().getEdgeSource(e)) + ", "
 						+ mapToVar.get(rule.getRule().getEdgeTarget(e)) + ")";
 			};
 
@@ -163,6 +165,13 @@ public class RuleMiningEstimates {
 		exp.profile = Experiments.Profile.Head;
 		exp.reward = Experiments.Reward.SupportConfLength;
 
+		// Exact metrics are the ground truth, so they are not capped, and searches are not instrumented, so that CPU times
+		// can be compared. If a cap is set, the errors of the estimates of a rule whose exact metrics were truncated are
+		// against lower bounds, and their rows say so.
+		exp.instrumented = false;
+		exp.maxMatchingCalls = 0;
+		exp.maxMatchingTime = 0;
+
 		Experiments.configureProfile(exp);
 		Experiments.configureReward(exp);
 
@@ -216,11 +225,17 @@ public class RuleMiningEstimates {
 
 		DatabaseManagementService dbService = getService(copyDb), latticeService = getService(lattice);
 
+		// The snapshot is taken from the original folder, so all the copies share it.
 		GraphDatabase graphDb = new GraphDatabase(dbService.database(GraphDatabaseSettings.DEFAULT_DATABASE_NAME),
-				split);
-		LatticeGraph latticeDb = new LatticeGraph(latticeService.database(GraphDatabaseSettings.DEFAULT_DATABASE_NAME));
+				split, GraphDatabase.getSnapshotFile(db));
+		LatticeGraph latticeDb = new LatticeGraph(latticeService.database(GraphDatabaseSettings.DEFAULT_DATABASE_NAME),
+				graphDb.getDictionary());
+
+		// Profiles use the names of the predicates.
+		List<String> heads = graphDb.getPredicates().stream().map(graphDb.getDictionary()::getName)
+				.collect(Collectors.toList());
 
-		params.policy.initPolicy(maxRuleLength, exp.usePrfHead ? graphDb.getPredicates() : null, exp.usePrfLength,
+		params.policy.initPolicy(maxRuleLength, exp.usePrfHead ? heads : null, exp.usePrfLength,
 				exp.usePrfNumberOfVars, exp.usePrfNumberOfPreds, rewardClass);
 
 		if (exp.useRwF1) {
@@ -252,13 +267,15 @@ public class RuleMiningEstimates {
 					"\tWorker: " + workerId + "; Processing Rule " + toProcess.getRuleId() + " -- " + new Date());
 
 			GraphVisitor queryVisitor = new GraphVisitor(graphDb, toProcess.getRule(), toProcess.getHead(), split);
+			queryVisitor.setInstrumented(exp.instrumented);
 
 			System.out.println("\tWorker: " + workerId + "; Computing exact support of Rule " + toProcess.getRuleId()
 					+ " -- " + new Date());
 
-			printRuleToFile(toProcess, resultsFile);
+			printRuleToFile(toProcess, graphDb.getDictionary(), resultsFile);
 
 			ExactSupportVisitor exactSupportVisitor = RuleMetricFactory.getExactSupport(queryVisitor);
+			exactSupportVisitor.setBudget(MatchBudget.of(exp.maxMatchingCalls, exp.maxMatchingTime));
 
 			RuleMetricListener exactSupportListener = new ExactRuleMetricListener(
 					new RuleSupport(queryVisitor.getHeadSize()));
@@ -318,6 +335,10 @@ public class RuleMiningEstimates {
 				}
 
 				toReport.put("CPU", listener.getTimeElapsed());
+				if (metric.isTruncated())
+					toReport.put("Truncated", true);
+				if (support.isTruncated() || (exactConf != null && exactConf.isTruncated()))
+					toReport.put("ExactTruncated", true);
 				toReport.putAll(metric.getExtraStuff());
 
 				allToReport.add(toReport.toString());
@@ -384,9 +405,10 @@ public class RuleMiningEstimates {
 
 					GraphVisitor pcaQueryVisitor = GraphVisitor.getPCAConfVisitor(graphDb, toProcess.getRule(),
 							toProcess.getHead(), corrupt, split);
+					pcaQueryVisitor.setInstrumented(exp.instrumented);
 
-					BigInteger total = BigInteger.valueOf(pcaQueryVisitor.getVariableCandidates(x).size())
-							.multiply(BigInteger.valueOf(pcaQueryVisitor.getVariableCandidates(y).size()));
+					BigInteger total = BigInteger.valueOf(pcaQueryVisitor.getCandidates(x).size())
+							.multiply(BigInteger.valueOf(pcaQueryVisitor.getCandidates(y).size()));
 
 					// We will always use Binomial+CLT with certain accuracy and confidence.
 					BinomialEstimator binEstimator = new BinomialEstimator(new EstimatorMemento(), .005, .0005,
@@ -419,6 +441,7 @@ public class RuleMiningEstimates {
 							+ " PCA confidence of Rule " + toProcess.getRuleId() + " (total: " + total + "; CLT bound: "
 							+ binEstimator.getCLTBound() + ") -- " + new Date());
 
+					exactPCAVisitor.setBudget(MatchBudget.of(exp.maxMatchingCalls, exp.maxMatchingTime));
 					exactPCAVisitor.compute(List.of(exactPCAListener));
 					reportResult.apply("PCAExact", exactPCAListener, exactConf);
 
@@ -49,7 +49,8 @@ public class TestEstimates {
 				.setConfig(GraphDatabaseSettings.preallocate_logical_logs, false).build();
 		registerShutdownHook(dbService);
 
-		GraphDatabase db = new GraphDatabase(dbService.database(GraphDatabaseSettings.DEFAULT_DATABASE_NAME), split);
+		GraphDatabase db = new GraphDatabase(dbService.database(GraphDatabaseSettings.DEFAULT_DATABASE_NAME), split,
+				GraphDatabase.getSnapshotFile(dbFolder));
 
 		DirectedMultigraph<Integer, LabeledEdge> query = new DirectedMultigraph<>(LabeledEdge.class);
 
@@ -450,10 +451,10 @@ public class TestEstimates {
 		query.addVertex(2);
 		query.addVertex(3);
 
-		query.addEdge(0, 1, new LabeledEdge("P161", 0));
-		query.addEdge(2, 0, new LabeledEdge("P106", 1));
-		query.addEdge(2, 3, new LabeledEdge("P27", 2));
-		query.addEdge(1, 3, new LabeledEdge("P27", 3));
+		query.addEdge(0, 1, new LabeledEdge(db.getDictionary().getId("P161"), 0));
+		query.addEdge(2, 0, new LabeledEdge(db.getDictionary().getId("P106"), 1));
+		query.addEdge(2, 3, new LabeledEdge(db.getDictionary().getId("P27"), 2));
+		query.addEdge(1, 3, new LabeledEdge(db.getDictionary().getId("P27"), 3));
 
 		// Wikidata5M: P1075(a, b) <= P108(c, a), P31(c, d), P31(b, d)
 //		query.addVertex(0);
@@ -2,6 +2,7 @@ package edu.rit.goal.estimator;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.math.MathContext;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -13,22 +14,24 @@ import org.eclipse.collections.api.list.MutableList;
 
 public class EstimatorMemento {
 	private MutableList<Entry<Integer, Integer>> pairs = Lists.mutable.empty();
-	private MutableList<BigDecimal> probabilities = Lists.mutable.empty();
+	// Terms of the probabilities (null if they were not computed); they only become decimals if an estimator asks.
+	private MutableList<int[]> probabilityTerms = Lists.mutable.empty();
 	
 	public void reset() {
 		pairs.clear();
-		probabilities.clear();
+		probabilityTerms.clear();
 		lastPair = null;
 	}
 	
 	private Entry<Integer, Integer> lastPair = null;
-	public void newSuccess(int s, int o, BigDecimal probability) {
+	// The probability is the product of all the terms but the last one, divided by the last one.
+	public void newSuccess(int s, int o, int[] probabilityTerms) {
 		Entry<Integer, Integer> pair = Map.entry(s, o);
 		
 		pairs.add(pair);
 		lastPair = pair;
 		
-		probabilities.add(probability);
+		this.probabilityTerms.add(probabilityTerms);
 	}
 	
 	public Map<Entry<Integer, Integer>, AtomicInteger> getPairs(BigInteger limit) {
@@ -55,7 +58,26 @@ public class EstimatorMemento {
 	}
 	
 	public ImmutableList<BigDecimal> getProbabilities(BigInteger limit) {
-		return Lists.immutable.ofAll(probabilities.subList(0, limit.intValue()));
+		MutableList<BigDecimal> ret = Lists.mutable.empty();
+		
+		for (int i = 0; i < limit.intValue(); i++) {
+			int[] terms = probabilityTerms.get(i);
+			
+			if (terms == null)
+				throw new RuntimeException("Probabilities were not computed!");
+			
+			// The product is exact; only the division is rounded.
+			BigDecimal p = BigDecimal.ONE;
+			for (int j = 0; j < terms.length - 1; j++)
+				p = p.multiply(new BigDecimal(terms[j]));
+			
+			if (terms[terms.length - 1] != 1)
+				p = p.divide(new BigDecimal(terms[terms.length - 1]), MathContext.DECIMAL128);
+			
+			ret.add(p);
+		}
+		
+		return ret.toImmutable();
 	}
 	
 }
@@ -1,5 +1,6 @@
 package edu.rit.goal.estimator;
 
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 
@@ -26,12 +27,13 @@ public class Sampling<T> {
 		this.n = n;
 	}
 
-	MutableList<T> list, sample;
+	List<T> list;
+	MutableList<T> sample;
 	// These are the indexes of the list.
 	MutableIntList listIdx;
 	
 	// This initializes our sampling for the selected parameters.
-	public void init(MutableList<T> toSample) {
+	public void init(List<T> toSample) {
 		// Let's copy to avoid side effects.
 		list = toSample;
 		
@@ -1,190 +1,509 @@
 package edu.rit.goal.graph;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
-import org.eclipse.collections.api.factory.Lists;
-import org.eclipse.collections.api.factory.Sets;
 import org.eclipse.collections.api.factory.primitive.IntLists;
-import org.eclipse.collections.api.factory.primitive.IntObjectMaps;
 import org.eclipse.collections.api.factory.primitive.IntSets;
-import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.list.primitive.MutableIntList;
-import org.eclipse.collections.api.map.primitive.MutableIntObjectMap;
-import org.eclipse.collections.api.set.MutableSet;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
 
+import edu.rit.goal.graph.index.GraphSnapshot;
+import edu.rit.goal.graph.index.IndexStorage;
+import edu.rit.goal.graph.index.PairCursor;
+import edu.rit.goal.graph.index.PredicateIndex;
+import edu.rit.goal.graph.index.PredicateIndexBuilder;
+import edu.rit.goal.graph.index.PredicateIndexDelta;
+import edu.rit.goal.graph.index.SortedCursor;
+
 public class GraphDatabase {
 	GraphDatabaseService db;
 
-	Map<String, Integer> predicateSizes;
+	// Predicates are ids everywhere but in Neo4j, the snapshot and the reports.
+	PredicateDictionary dictionary;
+
+	// What a view reads. It never changes: a compaction gives every view a new one, so a reader that gets the state
+	// once sees indexes, sizes and statistics that go together. Whatever is computed from a state (e.g., the caches of
+	// GraphVisitor and QueryPlanCache) is only valid for it.
+	static class State {
+		final MutableIntList allEntities;
+
+		// These are our indexes: one CSR index per predicate id with all the splits.
+		final PredicateIndex[] allIndexes;
 
-	MutableIntList allEntities;
+		// These are the views of the indexes for the split (null if the predicate has no pairs in the split).
+		final PredicateIndex[] predicateIndexes;
 
-	// These are our indexes.
-	Map<String, MutableSet<Entry<Integer, Integer>>> predicatePairsAsSet;
-	Map<String, MutableList<Entry<Integer, Integer>>> predicatePairsAsList;
+		final Map<Integer, Integer> predicateSizes;
 
-	Map<String, MutableIntObjectMap<MutableList<Entry<Integer, Integer>>>> predicatePairsBySubjectAsList,
-			predicatePairsByObjectAsList;
-	Map<String, MutableIntObjectMap<MutableSet<Entry<Integer, Integer>>>> predicatePairsBySubjectAsSet,
-			predicatePairsByObjectAsSet;
+		// Computed once for the view, see GraphStatistics.
+		final GraphStatistics statistics;
+
+		State(MutableIntList allEntities, PredicateIndex[] allIndexes, PredicateIndex[] predicateIndexes,
+				Map<Integer, Integer> predicateSizes, GraphStatistics statistics) {
+			super();
+			this.allEntities = allEntities;
+			this.allIndexes = allIndexes;
+			this.predicateIndexes = predicateIndexes;
+			this.predicateSizes = predicateSizes;
+			this.statistics = statistics;
+		}
+	}
+
+	volatile State state;
 
 	Integer split;
 
+	// All the views share the indexes, and there is a single view per split.
+	Map<Integer, GraphDatabase> views;
+
+	public enum LoadPhase {
+		SnapshotRead, Entities, Triples, Indexes, SnapshotWrite, Statistics
+	}
+
+	// How long each phase of the load took (ms); shared by all the views.
+	Map<LoadPhase, Long> loadTimes;
+
+	// Changes that are not in the indexes yet, by predicate; shared by all the views, which synchronize on it. Readers
+	// never look at them: everything a view reads comes from its state, so cursors, degrees, hasTriple, sizes and
+	// statistics always agree, and they all have the changes after the next compaction.
+	Map<Integer, PredicateIndexDelta> deltas;
+
+	// Number of changes in the deltas, to know when to compact; shared by all the views.
+	AtomicInteger pendingChanges;
+
+	// Pending changes are compacted when there are these many.
+	int compactionThreshold = 100000;
+
+	// Where the indexes we build live; see IndexStorage.
+	IndexStorage storage;
+
 	public GraphDatabase(GraphDatabaseService db, Integer split) {
+		this(db, split, null);
+	}
+
+	public GraphDatabase(GraphDatabaseService db, Integer split, Path snapshotFile) {
+		this(db, split, snapshotFile, IndexStorage.Heap);
+	}
+
+	// If there is a snapshot file of the store, the indexes are mapped from it instead of scanning Neo4j. If the file
+	// does not exist yet, or the store does not have the entities and triples it was built from anymore, we scan Neo4j
+	// and write it so the next run can use it. All the splits are loaded; this is the view of the given split, and
+	// getView provides the others.
+	public GraphDatabase(GraphDatabaseService db, Integer split, Path snapshotFile, IndexStorage storage) {
 		super();
 		this.db = db;
-		this.split = split;
+		this.storage = storage;
+		this.loadTimes = Collections.synchronizedMap(new EnumMap<>(LoadPhase.class));
 
-		predicateSizes = new HashMap<>();
+		boolean exists = snapshotFile != null && Files.exists(snapshotFile);
+		long[] source = exists ? getSourceCounts() : null;
 
-		predicatePairsAsSet = new HashMap<>();
-		predicatePairsAsList = new HashMap<>();
+		if (exists && GraphSnapshot.isSnapshotOf(snapshotFile, source[0], source[1])) {
+			GraphSnapshot snapshot = time(LoadPhase.SnapshotRead, () -> GraphSnapshot.read(snapshotFile));
 
-		predicatePairsBySubjectAsList = new HashMap<>();
-		predicatePairsByObjectAsList = new HashMap<>();
+			setState(split, IntArrayList.newListWith(snapshot.entities), setIndexes(snapshot.predicateIndexes));
+		} else {
+			if (exists)
+				System.out.println("Snapshot " + snapshotFile + " is not of this store; it will be written again.");
 
-		predicatePairsBySubjectAsSet = new HashMap<>();
-		predicatePairsByObjectAsSet = new HashMap<>();
+			load(split);
 
-		try (Transaction tx = db.beginTx()) {
-			Result r = tx.execute(
-					"MATCH (:Entity)-[r:Triple]->(:Entity) " + ((split != null) ? " WHERE " + getSplitFilter("r") : "")
-							+ " RETURN r.predicate AS p, COUNT(r) AS cnt");
-			while (r.hasNext()) {
-				Map<String, Object> next = r.next();
-				predicateSizes.put((String) next.get("p"), ((Number) next.get("cnt")).intValue());
-			}
-			r.close();
+			if (snapshotFile != null)
+				writeSnapshot(snapshotFile);
 		}
 
-		allEntities = IntLists.mutable.empty();
-		try (Transaction tx = db.beginTx()) {
-			Result r = tx.execute("MATCH (e:Entity) RETURN e.id AS eid");
-			while (r.hasNext())
-				allEntities.add((int) r.next().get("eid"));
-			r.close();
+		views = new ConcurrentHashMap<>();
+		views.put(getIndexSplit(split), this);
+		deltas = new HashMap<>();
+		pendingChanges = new AtomicInteger();
+	}
+
+	// Already loaded indexes, e.g., straight from the dataset files; there is no Neo4j behind.
+	public GraphDatabase(Integer split, MutableIntList allEntities, Map<String, PredicateIndex> allIndexes) {
+		this(split, allEntities, allIndexes, IndexStorage.Heap);
+	}
+
+	public GraphDatabase(Integer split, MutableIntList allEntities, Map<String, PredicateIndex> allIndexes,
+			IndexStorage storage) {
+		super();
+		this.storage = storage;
+		this.loadTimes = Collections.synchronizedMap(new EnumMap<>(LoadPhase.class));
+
+		Map<String, PredicateIndex> storedIndexes = new HashMap<>();
+		for (String p : allIndexes.keySet())
+			storedIndexes.put(p, storage.store(allIndexes.get(p)));
+
+		setState(split, allEntities, setIndexes(storedIndexes));
+
+		views = new ConcurrentHashMap<>();
+		views.put(getIndexSplit(split), this);
+		deltas = new HashMap<>();
+		pendingChanges = new AtomicInteger();
+	}
+
+	private GraphDatabase(GraphDatabase other, Integer split) {
+		super();
+		this.db = other.db;
+		this.dictionary = other.dictionary;
+		this.views = other.views;
+		this.loadTimes = other.loadTimes;
+		this.deltas = other.deltas;
+		this.pendingChanges = other.pendingChanges;
+		this.storage = other.storage;
+
+		// Not while compacting.
+		synchronized (deltas) {
+			this.compactionThreshold = other.compactionThreshold;
+
+			setState(split, other.state.allEntities, other.state.allIndexes);
 		}
+	}
+
+	// The view with the triples whose split is <= the given one (null means all of them). It is cheap: the indexes are
+	// shared.
+	public GraphDatabase getView(Integer split) {
+		return views.computeIfAbsent(getIndexSplit(split), t -> new GraphDatabase(this, split));
+	}
+
+	public Integer getSplit() {
+		return split;
+	}
+
+	private void setState(Integer split, MutableIntList allEntities, PredicateIndex[] allIndexes) {
+		this.split = split;
+		this.state = newState(split, allEntities, allIndexes);
+	}
+
+	// Predicates that are not in the indexes yet (see addTriple) have no pairs in any split.
+	private State newState(Integer split, MutableIntList allEntities, PredicateIndex[] allIndexes) {
+		int t = getIndexSplit(split);
+
+		// Sizes are kept in id order, so predicates are visited in the same order as their names.
+		Map<Integer, Integer> predicateSizes = new LinkedHashMap<>();
+		PredicateIndex[] predicateIndexes = new PredicateIndex[allIndexes.length];
+
+		for (int p = 0; p < allIndexes.length; p++) {
+			PredicateIndex index = allIndexes[p] == null ? null : allIndexes[p].view(t);
+
+			if (index != null && index.size() > 0) {
+				predicateSizes.put(p, index.size());
+				predicateIndexes[p] = index;
+			}
+		}
+
+		GraphStatistics statistics = time(LoadPhase.Statistics,
+				() -> new GraphStatistics(allEntities.size(), predicateIndexes));
+
+		return new State(allEntities, allIndexes, predicateIndexes, Collections.unmodifiableMap(predicateSizes),
+				statistics);
+	}
+
+	private PredicateIndex[] setIndexes(Map<String, PredicateIndex> indexes) {
+		dictionary = new PredicateDictionary(indexes.keySet());
+
+		PredicateIndex[] ret = new PredicateIndex[dictionary.size()];
+		for (int p = 0; p < ret.length; p++)
+			ret[p] = indexes.get(dictionary.getName(p));
+		return ret;
+	}
+
+	private static int getIndexSplit(Integer split) {
+		if (split == null)
+			return PredicateIndex.ALL;
+		else if (split < 0)
+			throw new RuntimeException("Split cannot be negative!");
+		else
+			return Math.min(split, PredicateIndex.ALL);
+	}
+
+	// Entities and triples are read at the same time in different transactions; then, the indexes of the predicates
+	// are built in parallel.
+	private void load(Integer split) {
+		ForkJoinTask<MutableIntList> entitiesTask = ForkJoinPool.commonPool()
+				.submit(() -> time(LoadPhase.Entities, this::loadEntities));
+
+		Map<String, PredicateIndexBuilder> builders = time(LoadPhase.Triples, this::loadTriples);
 
-		Map<String, MutableIntSet> entitiesByPredicateAsSet = new HashMap<>();
+		PredicateIndex[] allIndexes = setIndexes(
+				time(LoadPhase.Indexes, () -> PredicateIndexBuilder.buildAll(builders, storage)));
+
+		setState(split, entitiesTask.join(), allIndexes);
+	}
+
+	private MutableIntList loadEntities() {
+		MutableIntList entities = IntLists.mutable.empty();
 		try (Transaction tx = db.beginTx()) {
 			Result r = tx.execute("MATCH (e:Entity) RETURN e.id AS eid");
 			while (r.hasNext())
-				allEntities.add((int) r.next().get("eid"));
+				entities.add((int) r.next().get("eid"));
 			r.close();
 		}
+		return entities;
+	}
 
+	private Map<String, PredicateIndexBuilder> loadTriples() {
+		// We get all the splits; triples with no split are train.
+		Map<String, PredicateIndexBuilder> builders = new HashMap<>();
 		try (Transaction tx = db.beginTx()) {
 			Result r = tx.execute("MATCH (s:Entity)-[r:Triple]->(o:Entity) "
-					+ ((split != null) ? " WHERE " + getSplitFilter("r") : "")
-					+ "RETURN r.predicate AS p, s.id AS sid, o.id AS oid");
+					+ "RETURN r.predicate AS p, s.id AS sid, o.id AS oid, coalesce(r.split, 0) AS split");
 			while (r.hasNext()) {
 				Map<String, Object> next = r.next();
 
 				String p = (String) next.get("p");
-				int sid = (int) next.get("sid"), oid = (int) next.get("oid");
+				int sid = (int) next.get("sid"), oid = (int) next.get("oid"),
+						split = ((Number) next.get("split")).intValue();
 
-				Entry<Integer, Integer> pair = Map.entry(sid, oid);
+				builders.computeIfAbsent(p, k -> new PredicateIndexBuilder()).add(sid, oid, split);
+			}
+			r.close();
+		}
+		return builders;
+	}
 
-				entitiesByPredicateAsSet.putIfAbsent(p, IntSets.mutable.empty());
+	private <T> T time(LoadPhase phase, Supplier<T> supplier) {
+		long start = System.currentTimeMillis();
+		T ret = supplier.get();
+		addLoadTime(phase, System.currentTimeMillis() - start);
+		return ret;
+	}
+
+	// Phases can be timed outside, e.g., when the triples are read from files.
+	public void addLoadTime(LoadPhase phase, long millis) {
+		loadTimes.merge(phase, millis, Long::sum);
+	}
+
+	public Map<LoadPhase, Long> getLoadTimes() {
+		return loadTimes;
+	}
+
+	public void writeSnapshot(Path snapshotFile) {
+		long start = System.currentTimeMillis();
 
-				entitiesByPredicateAsSet.get(p).add(sid);
-				entitiesByPredicateAsSet.get(p).add(oid);
+		// Pending changes are not written.
+		State current = state;
 
-				predicatePairsAsSet.putIfAbsent(p, Sets.mutable.empty());
-				predicatePairsAsList.putIfAbsent(p, Lists.mutable.empty());
+		Map<String, PredicateIndex> indexes = new HashMap<>();
+		for (int p = 0; p < current.allIndexes.length; p++)
+			if (current.allIndexes[p] != null)
+				indexes.put(dictionary.getName(p), current.allIndexes[p]);
 
-				predicatePairsBySubjectAsList.putIfAbsent(p, IntObjectMaps.mutable.empty());
-				predicatePairsByObjectAsList.putIfAbsent(p, IntObjectMaps.mutable.empty());
+		long[] source = getSourceCounts();
+		new GraphSnapshot(current.allEntities.toArray(), indexes, source[0], source[1]).write(snapshotFile);
+
+		addLoadTime(LoadPhase.SnapshotWrite, System.currentTimeMillis() - start);
+	}
 
-				predicatePairsBySubjectAsSet.putIfAbsent(p, IntObjectMaps.mutable.empty());
-				predicatePairsByObjectAsSet.putIfAbsent(p, IntObjectMaps.mutable.empty());
+	// What snapshots are checked against: the number of entities and triples of the Neo4j store, which Neo4j keeps
+	// counted, or of the indexes if there is no store (e.g., they were loaded from the dataset files).
+	private long[] getSourceCounts() {
+		if (db == null) {
+			State current = state;
 
-				predicatePairsAsSet.get(p).add(pair);
-				predicatePairsAsList.get(p).add(pair);
+			long triples = 0;
+			for (PredicateIndex index : current.allIndexes)
+				if (index != null)
+					triples += index.view(PredicateIndex.ALL).size();
 
-				predicatePairsBySubjectAsList.get(p).getIfAbsentPut(sid, Lists.mutable.empty()).add(pair);
-				predicatePairsByObjectAsList.get(p).getIfAbsentPut(oid, Lists.mutable.empty()).add(pair);
+			return new long[] { current.allEntities.size(), triples };
+		}
+
+		try (Transaction tx = db.beginTx()) {
+			long entities = (long) tx.execute("MATCH (e:Entity) RETURN count(e) AS c").next().get("c"),
+					triples = (long) tx.execute("MATCH ()-[r:Triple]->() RETURN count(r) AS c").next().get("c");
+			return new long[] { entities, triples };
+		}
+	}
+
+	// The triple is buffered: all the views have it after the next compaction, which happens once there are enough
+	// pending changes or when compact is called. If it was already there, it takes the given split. A new predicate gets
+	// an id right away, but it has no index until then.
+	public void addTriple(String p, int s, int o, int split) {
+		synchronized (deltas) {
+			PredicateIndexDelta delta = deltas.computeIfAbsent(dictionary.add(p), k -> new PredicateIndexDelta());
+			pendingChanges.addAndGet(delta.add(s, o, split));
+			compactIfNeeded();
+		}
+	}
+
+	public void addTriple(String p, int s, int o) {
+		addTriple(p, s, o, 0);
+	}
+
+	// Same as above; entities stay even if they have no triples.
+	public void removeTriple(String p, int s, int o) {
+		if (!dictionary.contains(p))
+			return;
+
+		synchronized (deltas) {
+			PredicateIndexDelta delta = deltas.computeIfAbsent(dictionary.getId(p), k -> new PredicateIndexDelta());
+			pendingChanges.addAndGet(delta.remove(s, o));
+			compactIfNeeded();
+		}
+	}
+
+	public int getPendingChanges() {
+		return pendingChanges.get();
+	}
 
-				predicatePairsBySubjectAsSet.get(p).getIfAbsentPut(sid, Sets.mutable.empty()).add(pair);
-				predicatePairsByObjectAsSet.get(p).getIfAbsentPut(oid, Sets.mutable.empty()).add(pair);
+	public void setCompactionThreshold(int compactionThreshold) {
+		synchronized (deltas) {
+			for (GraphDatabase view : views.values())
+				view.compactionThreshold = compactionThreshold;
+		}
+	}
+
+	private void compactIfNeeded() {
+		if (getPendingChanges() >= compactionThreshold)
+			compact();
+	}
+
+	// Only the predicates with changes get new indexes; then, every view gets a new state with them. States are
+	// immutable, so whoever is reading the old one can keep doing it; visitors built from it should be built again to
+	// see the changes. It is not cheap (the statistics of every view are computed again), so it is better to call it
+	// once after a batch of changes.
+	public void compact() {
+		synchronized (deltas) {
+			if (deltas.isEmpty())
+				return;
+
+			State current = state;
+
+			PredicateIndex[] newIndexes = Arrays.copyOf(current.allIndexes, dictionary.size());
+
+			MutableIntList newEntities = IntLists.mutable.withAll(current.allEntities);
+			MutableIntSet entitySet = IntSets.mutable.withAll(current.allEntities);
+
+			for (Entry<Integer, PredicateIndexDelta> entry : deltas.entrySet()) {
+				int p = entry.getKey();
+
+				newIndexes[p] = storage.store(entry.getValue().apply(newIndexes[p]));
+
+				entry.getValue().forEachAddedEntity(e -> {
+					if (entitySet.add(e))
+						newEntities.add(e);
+				});
 			}
-			r.close();
+
+			Map<GraphDatabase, State> newStates = new HashMap<>();
+			for (GraphDatabase view : views.values())
+				newStates.put(view, newState(view.split, newEntities, newIndexes));
+
+			newStates.forEach((view, newState) -> view.state = newState);
+
+			deltas.clear();
+			pendingChanges.set(0);
 		}
 	}
 
 	public MutableIntList getAllEntities() {
-		return allEntities;
+		return state.allEntities;
+	}
+
+	public PredicateDictionary getDictionary() {
+		return dictionary;
+	}
+
+	public GraphStatistics getStatistics() {
+		return state.statistics;
+	}
+
+	// Null if p has no pairs in the view, or no index yet.
+	public PredicateIndex getIndex(int p) {
+		PredicateIndex[] indexes = state.predicateIndexes;
+		return p < indexes.length ? indexes[p] : null;
+	}
+
+	// All the pairs of p.
+	public PairCursor getCandidates(int p, PairCursor cursor) {
+		return cursor.scan(getIndex(p));
+	}
+
+	// All the pairs (s, *) of p.
+	public PairCursor getCandidatesBySubject(int p, int s, PairCursor cursor) {
+		return cursor.bySubject(getIndex(p), s);
 	}
 
-	public MutableList<Entry<Integer, Integer>> getCandidatesAsList(String p) {
-		return predicatePairsAsList.get(p);
+	// All the pairs (*, o) of p.
+	public PairCursor getCandidatesByObject(int p, int o, PairCursor cursor) {
+		return cursor.byObject(getIndex(p), o);
 	}
 
-	public MutableSet<Entry<Integer, Integer>> getCandidatesAsSet(String p) {
-		return predicatePairsAsSet.get(p);
+	// The subjects of p in order.
+	public SortedCursor getSubjects(int p, SortedCursor cursor) {
+		return cursor.subjects(getIndex(p));
 	}
 
-	public MutableList<Entry<Integer, Integer>> getCandidatesBySubjectAsList(String p, int s) {
-		return predicatePairsBySubjectAsList.get(p).get(s);
+	// The objects of p in order.
+	public SortedCursor getObjects(int p, SortedCursor cursor) {
+		return cursor.objects(getIndex(p));
 	}
 
-	public MutableList<Entry<Integer, Integer>> getCandidatesByObjectAsList(String p, int o) {
-		return predicatePairsByObjectAsList.get(p).get(o);
+	// The objects of (s, *) of p in order.
+	public SortedCursor getObjectsBySubject(int p, int s, SortedCursor cursor) {
+		return cursor.objectsOf(getIndex(p), s);
 	}
 
-	public MutableSet<Entry<Integer, Integer>> getCandidatesBySubjectAsSet(String p, int s) {
-		return predicatePairsBySubjectAsSet.get(p).get(s);
+	// The subjects of (*, o) of p in order.
+	public SortedCursor getSubjectsByObject(int p, int o, SortedCursor cursor) {
+		return cursor.subjectsOf(getIndex(p), o);
 	}
 
-	public MutableSet<Entry<Integer, Integer>> getCandidatesByObjectAsSet(String p, int o) {
-		return predicatePairsByObjectAsSet.get(p).get(o);
+	// Like the cursors, the degrees and hasTriple only read the state, so they agree with them.
+	public int getSubjectDegree(int p, int s) {
+		PredicateIndex index = getIndex(p);
+		return index == null ? 0 : index.getSubjectDegree(s);
 	}
 
-	public MutableIntSet getCandidatesAllSubjects(String p) {
-		return predicatePairsBySubjectAsSet.get(p).keySet();
+	public int getObjectDegree(int p, int o) {
+		PredicateIndex index = getIndex(p);
+		return index == null ? 0 : index.getObjectDegree(o);
 	}
 
-	public MutableIntSet getCandidatesAllObjects(String p) {
-		return predicatePairsByObjectAsSet.get(p).keySet();
+	// Constant time and no allocations, see PairSet.
+	public boolean hasTriple(int p, int s, int o) {
+		PredicateIndex index = getIndex(p);
+		return index != null && index.contains(s, o);
 	}
 
 	public Transaction getTransaction() {
 		return db.beginTx();
 	}
 
-	public Map<String, Integer> getPredicateSizes() {
-		return predicateSizes;
+	public Map<Integer, Integer> getPredicateSizes() {
+		return state.predicateSizes;
 	}
 
-	public Collection<String> getPredicates() {
-		return predicateSizes.keySet();
+	public Collection<Integer> getPredicates() {
+		return state.predicateSizes.keySet();
 	}
 
 	public long getNumberOfEntities() {
-		Long ret = null;
-		try (Transaction tx = db.beginTx()) {
-			Result r = tx.execute("MATCH (e:Entity) RETURN COUNT(e) AS cnt");
-			if (r.hasNext()) {
-				Map<String, Object> next = r.next();
-				ret = ((Number) next.get("cnt")).longValue();
-			}
-			r.close();
-		}
-		return ret;
+		return state.statistics.getNumberOfEntities();
 	}
 
-	private String getSplitFilter(String triple) {
-		if (split != null)
-			return triple + ".split <= " + split + " ";
-		else
-			throw new RuntimeException("Variable cannot be null!");
+	// The snapshot lives next to the Neo4j folder; it has all the splits.
+	public static Path getSnapshotFile(String dbFolder) {
+		Path folder = Path.of(dbFolder);
+		return folder.resolveSibling(folder.getFileName() + ".snapshot");
 	}
 
 }
@@ -0,0 +1,120 @@
+package edu.rit.goal.graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListener;
+
+// Keeps a GraphDatabase up to date with the triples committed to its Neo4j store. It is opt-in: register it with the
+// DatabaseManagementService of a store that is written while the GraphDatabase is in use. The changes of every commit
+// are buffered in the GraphDatabase (see addTriple), which compacts them once there are enough; readers only see them
+// after that, so call compact to have them sooner. Triples are relationships with a predicate (and maybe a split);
+// entities are nodes with an id.
+public class GraphDatabaseUpdater implements TransactionEventListener<List<Consumer<GraphDatabase>>> {
+	GraphDatabase db;
+
+	public GraphDatabaseUpdater(GraphDatabase db) {
+		super();
+		this.db = db;
+	}
+
+	// The properties of what was deleted can only be read before the commit, so we collect the changes here and apply
+	// them after the commit.
+	@Override
+	public List<Consumer<GraphDatabase>> beforeCommit(TransactionData data, Transaction transaction,
+			GraphDatabaseService databaseService) throws Exception {
+		List<Consumer<GraphDatabase>> changes = new ArrayList<>();
+
+		Map<String, Integer> deletedEntities = new HashMap<>();
+		for (PropertyEntry<Node> entry : data.removedNodeProperties())
+			if (entry.key().equals("id") && data.isDeleted(entry.entity()))
+				deletedEntities.put(entry.entity().getElementId(), (int) entry.previouslyCommittedValue());
+
+		Map<String, Map<String, Object>> deletedTriples = new HashMap<>();
+		for (PropertyEntry<Relationship> entry : data.removedRelationshipProperties())
+			if (data.isDeleted(entry.entity()))
+				deletedTriples.computeIfAbsent(entry.entity().getElementId(), k -> new HashMap<>()).put(entry.key(),
+						entry.previouslyCommittedValue());
+
+		for (Relationship r : data.deletedRelationships()) {
+			Map<String, Object> properties = deletedTriples.get(r.getElementId());
+
+			if (properties != null && properties.containsKey("predicate")) {
+				String p = (String) properties.get("predicate");
+				int s = getId(r.getStartNode(), deletedEntities), o = getId(r.getEndNode(), deletedEntities);
+
+				changes.add(db -> db.removeTriple(p, s, o));
+			}
+		}
+
+		Set<String> created = new HashSet<>();
+		for (Relationship r : data.createdRelationships())
+			if (r.hasProperty("predicate")) {
+				created.add(r.getElementId());
+
+				String p = (String) r.getProperty("predicate");
+				int s = getId(r.getStartNode(), deletedEntities), o = getId(r.getEndNode(), deletedEntities),
+						split = getSplit(r.getProperty("split", null));
+
+				changes.add(db -> db.addTriple(p, s, o, split));
+			}
+
+		// The predicate or the split of a triple that was there changed: it goes away and comes back.
+		for (PropertyEntry<Relationship> entry : data.assignedRelationshipProperties()) {
+			Relationship r = entry.entity();
+
+			if (!created.contains(r.getElementId()) && r.hasProperty("predicate")
+					&& (entry.key().equals("predicate") || entry.key().equals("split"))) {
+				String p = (String) r.getProperty("predicate"),
+						oldP = entry.key().equals("predicate") && entry.previouslyCommittedValue() != null
+								? (String) entry.previouslyCommittedValue()
+								: p;
+				int s = getId(r.getStartNode(), deletedEntities), o = getId(r.getEndNode(), deletedEntities),
+						split = getSplit(r.getProperty("split", null));
+
+				changes.add(db -> db.removeTriple(oldP, s, o));
+				changes.add(db -> db.addTriple(p, s, o, split));
+			}
+		}
+
+		return changes;
+	}
+
+	@Override
+	public void afterCommit(TransactionData data, List<Consumer<GraphDatabase>> changes,
+			GraphDatabaseService databaseService) {
+		if (changes == null || changes.isEmpty())
+			return;
+
+		for (Consumer<GraphDatabase> change : changes)
+			change.accept(db);
+	}
+
+	@Override
+	public void afterRollback(TransactionData data, List<Consumer<GraphDatabase>> changes,
+			GraphDatabaseService databaseService) {
+		// Nothing was applied.
+	}
+
+	private static int getId(Node n, Map<String, Integer> deletedEntities) {
+		Integer id = deletedEntities.get(n.getElementId());
+		return id != null ? id : (int) n.getProperty("id");
+	}
+
+	// Triples with no split are train.
+	private static int getSplit(Object split) {
+		return split == null ? 0 : ((Number) split).intValue();
+	}
+
+}
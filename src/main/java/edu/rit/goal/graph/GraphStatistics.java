@@ -0,0 +1,251 @@
+package edu.rit.goal.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jgrapht.graph.DirectedMultigraph;
+
+import edu.rit.goal.graph.index.PredicateIndex;
+
+// Statistics of a view of the graph. They are computed from the indexes in a single pass, so reading them never
+// touches Neo4j. Predicates are ids; predicates with no pairs in the view have no statistics. Co-occurrences take
+// (2P)^2 slots and a pass over every entity, so they are only computed if they are asked for.
+public class GraphStatistics {
+	public enum Position {
+		Subject, Object
+	}
+
+	public static class PredicateStatistics {
+		int size, subjects, objects, maxSubjectDegree, maxObjectDegree;
+
+		// Bucket k counts the rows whose degree is in [2^k, 2^(k+1)).
+		int[] subjectDegreeHistogram, objectDegreeHistogram;
+
+		public int getSize() {
+			return size;
+		}
+
+		// Distinct subjects.
+		public int getSubjects() {
+			return subjects;
+		}
+
+		// Distinct objects.
+		public int getObjects() {
+			return objects;
+		}
+
+		// Functionality is 1 when every subject has a single object; inverse functionality is the same for objects.
+		public double getFunctionality() {
+			return (double) subjects / size;
+		}
+
+		public double getInverseFunctionality() {
+			return (double) objects / size;
+		}
+
+		// Average number of objects per subject.
+		public double getAverageSubjectDegree() {
+			return (double) size / subjects;
+		}
+
+		// Average number of subjects per object.
+		public double getAverageObjectDegree() {
+			return (double) size / objects;
+		}
+
+		public int getMaxSubjectDegree() {
+			return maxSubjectDegree;
+		}
+
+		public int getMaxObjectDegree() {
+			return maxObjectDegree;
+		}
+
+		public int[] getSubjectDegreeHistogram() {
+			return subjectDegreeHistogram;
+		}
+
+		public int[] getObjectDegreeHistogram() {
+			return objectDegreeHistogram;
+		}
+	}
+
+	long numberOfEntities;
+
+	int numberOfPredicates;
+
+	// Null if the predicate has no pairs.
+	PredicateStatistics[] predicates;
+
+	// Number of entities that are in the given position of two predicates; the slot of (p, position) is
+	// p * 2 + position. It is symmetric, and the diagonal has the distinct subjects and objects. Null until the first
+	// time it is needed; the indexes are kept until then.
+	private volatile int[] cooccurrences;
+	private PredicateIndex[] indexes;
+	private int maxEntity;
+
+	GraphStatistics(long numberOfEntities, PredicateIndex[] indexes) {
+		super();
+		this.numberOfEntities = numberOfEntities;
+		this.numberOfPredicates = indexes.length;
+		this.predicates = new PredicateStatistics[indexes.length];
+
+		int maxEntity = -1;
+
+		for (int p = 0; p < indexes.length; p++)
+			if (indexes[p] != null) {
+				PredicateIndex index = indexes[p];
+
+				PredicateStatistics stats = new PredicateStatistics();
+				stats.size = index.size();
+				stats.subjectDegreeHistogram = new int[Integer.SIZE];
+				stats.objectDegreeHistogram = new int[Integer.SIZE];
+
+				// Rows can be empty in a view.
+				for (int row = 0; row < index.getSubjectCount(); row++) {
+					int degree = index.getSubjectRowDegree(row);
+
+					if (degree > 0) {
+						stats.subjects++;
+						stats.maxSubjectDegree = Math.max(stats.maxSubjectDegree, degree);
+						stats.subjectDegreeHistogram[bucket(degree)]++;
+						maxEntity = Math.max(maxEntity, index.getSubject(row));
+					}
+				}
+
+				for (int row = 0; row < index.getObjectCount(); row++) {
+					int degree = index.getObjectRowDegree(row);
+
+					if (degree > 0) {
+						stats.objects++;
+						stats.maxObjectDegree = Math.max(stats.maxObjectDegree, degree);
+						stats.objectDegreeHistogram[bucket(degree)]++;
+						maxEntity = Math.max(maxEntity, index.getObject(row));
+					}
+				}
+
+				stats.subjectDegreeHistogram = trim(stats.subjectDegreeHistogram);
+				stats.objectDegreeHistogram = trim(stats.objectDegreeHistogram);
+
+				predicates[p] = stats;
+			}
+
+		this.indexes = indexes;
+		this.maxEntity = maxEntity;
+	}
+
+	private int[] getCooccurrences() {
+		int[] ret = cooccurrences;
+		if (ret == null)
+			synchronized (this) {
+				ret = cooccurrences;
+				if (ret == null) {
+					cooccurrences = ret = computeCooccurrences(indexes, maxEntity);
+					indexes = null;
+				}
+			}
+		return ret;
+	}
+
+	// For each entity, we get the slots it is in; every pair of them co-occurs once.
+	private int[] computeCooccurrences(PredicateIndex[] indexes, int maxEntity) {
+		int slots = numberOfPredicates * 2;
+
+		int[] offsets = new int[maxEntity + 2];
+		forEachEntity(indexes, (e, slot) -> offsets[e + 1]++);
+
+		for (int e = 0; e <= maxEntity; e++)
+			offsets[e + 1] += offsets[e];
+
+		int[] entitySlots = new int[offsets[maxEntity + 1]], next = Arrays.copyOf(offsets, maxEntity + 1);
+		forEachEntity(indexes, (e, slot) -> entitySlots[next[e]++] = slot);
+
+		int[] ret = new int[slots * slots];
+		for (int e = 0; e <= maxEntity; e++)
+			for (int i = offsets[e]; i < offsets[e + 1]; i++)
+				for (int j = offsets[e]; j < offsets[e + 1]; j++)
+					ret[entitySlots[i] * slots + entitySlots[j]]++;
+		return ret;
+	}
+
+	private interface SlotConsumer {
+		void accept(int entity, int slot);
+	}
+
+	private static void forEachEntity(PredicateIndex[] indexes, SlotConsumer consumer) {
+		for (int p = 0; p < indexes.length; p++)
+			if (indexes[p] != null) {
+				for (int row = 0; row < indexes[p].getSubjectCount(); row++)
+					if (indexes[p].getSubjectRowDegree(row) > 0)
+						consumer.accept(indexes[p].getSubject(row), slot(p, Position.Subject));
+
+				for (int row = 0; row < indexes[p].getObjectCount(); row++)
+					if (indexes[p].getObjectRowDegree(row) > 0)
+						consumer.accept(indexes[p].getObject(row), slot(p, Position.Object));
+			}
+	}
+
+	public long getNumberOfEntities() {
+		return numberOfEntities;
+	}
+
+	public PredicateStatistics getPredicate(int p) {
+		return predicates[p];
+	}
+
+	// Number of entities that are in position1 of p1 and in position2 of p2; with p1 = p2 and different positions,
+	// these are the entities that are both subjects and objects of the predicate.
+	public int getCooccurrences(int p1, Position position1, int p2, Position position2) {
+		return getCooccurrences()[slot(p1, position1) * numberOfPredicates * 2 + slot(p2, position2)];
+	}
+
+	// Whether an entity connects p1 and p2 in the given positions, i.e., a join between them can have results.
+	public boolean cooccur(int p1, Position position1, int p2, Position position2) {
+		return getCooccurrences(p1, position1, p2, position2) > 0;
+	}
+
+	// Whether the query has no matches for sure: an atom has no pairs, or two atoms share a variable and no entity is in
+	// both positions.
+	public boolean hasNoMatches(DirectedMultigraph<Integer, LabeledEdge> query) {
+		for (LabeledEdge e : query.edgeSet())
+			if (predicates[e.predicate] == null)
+				return true;
+
+		for (int v : query.vertexSet())
+			for (LabeledEdge e1 : query.edgesOf(v))
+				for (LabeledEdge e2 : query.edgesOf(v))
+					for (Position position1 : getPositions(query, e1, v))
+						for (Position position2 : getPositions(query, e2, v))
+							if (!cooccur(e1.predicate, position1, e2.predicate, position2))
+								return true;
+
+		return false;
+	}
+
+	private static List<Position> getPositions(DirectedMultigraph<Integer, LabeledEdge> query, LabeledEdge e, int v) {
+		List<Position> positions = new ArrayList<>();
+		if (query.getEdgeSource(e) == v)
+			positions.add(Position.Subject);
+		if (query.getEdgeTarget(e) == v)
+			positions.add(Position.Object);
+		return positions;
+	}
+
+	private static int slot(int p, Position position) {
+		return p * 2 + position.ordinal();
+	}
+
+	private static int bucket(int degree) {
+		return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(degree);
+	}
+
+	private static int[] trim(int[] histogram) {
+		int length = histogram.length;
+		while (length > 0 && histogram[length - 1] == 0)
+			length--;
+		return Arrays.copyOf(histogram, length);
+	}
+
+}
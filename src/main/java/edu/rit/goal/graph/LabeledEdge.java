@@ -5,10 +5,10 @@ import org.jgrapht.graph.DefaultEdge;
 public class LabeledEdge extends DefaultEdge {
 	private static final long serialVersionUID = -8237534662863081340L;
 
-	public String predicate;
+	public int predicate;
 	public int pid;
 	
-	public LabeledEdge(String predicate, int pid) {
+	public LabeledEdge(int predicate, int pid) {
 		super();
 		this.predicate = predicate;
 		this.pid = pid;
@@ -20,13 +20,17 @@ import edu.rit.goal.graph.signature.SignatureAtom;
 public class LatticeGraph {
 	GraphDatabaseService db;
 
+	// Atoms are stored with the names of the predicates, so the lattice does not depend on how they are numbered.
+	PredicateDictionary dictionary;
+
 	enum NodeLabel {
 		Root, Node, Leaf, Metadata
 	}
 
-	public LatticeGraph(GraphDatabaseService db) {
+	public LatticeGraph(GraphDatabaseService db, PredicateDictionary dictionary) {
 		super();
 		this.db = db;
+		this.dictionary = dictionary;
 	}
 
 	public boolean isEmpty() {
@@ -93,7 +97,7 @@ public class LatticeGraph {
 
 				queryParams.put("atomsu" + i, sa.s);
 				queryParams.put("atomou" + i, sa.o);
-				queryParams.put("atompu" + i, sa.p);
+				queryParams.put("atompu" + i, dictionary.getName(sa.p));
 
 				if (i < length - 1)
 					query.append("-->");
@@ -133,7 +137,7 @@ public class LatticeGraph {
 				for (int i = 0; i < nodes.size(); i++) {
 					Node current = nodes.get(i);
 					int s = (int) current.getProperty("atom_s"), o = (int) current.getProperty("atom_o");
-					rule.addEdge(s, o, new LabeledEdge((String) current.getProperty("atom_p"), i));
+					rule.addEdge(s, o, new LabeledEdge(dictionary.getId((String) current.getProperty("atom_p")), i));
 				}
 			}
 			r.close();
@@ -326,7 +330,7 @@ public class LatticeGraph {
 			for (int i = 0; i < length; i++) {
 				SignatureAtom atom = signature.signature[i];
 				Map<String, Object> params = new HashMap<>(
-						Map.of("atom_s", atom.s, "atom_o", atom.o, "atom_p", atom.p));
+						Map.of("atom_s", atom.s, "atom_o", atom.o, "atom_p", dictionary.getName(atom.p)));
 
 				if (previousId != -1)
 					params.put("pid", previousId);
@@ -474,11 +478,12 @@ public class LatticeGraph {
 //		}
 //	}
 
-	public static String getStrRule(DirectedMultigraph<Integer, LabeledEdge> graph, int pid) {
+	public static String getStrRule(DirectedMultigraph<Integer, LabeledEdge> graph, int pid,
+			PredicateDictionary dictionary) {
 		LabeledEdge head = graph.edgeSet().stream().filter(e -> e.pid == pid).findAny().get();
 
 		Function<LabeledEdge, String> printEdge = (e) -> {
-			return e.predicate + "(" + graph.getEdgeSource(e) + ", " + graph.getEdgeTarget(e) + ")";
+			return dictionary.getName(e.predicate) + "(" + graph.getEdgeSource(e) + ", " + graph.getEdgeTarget(e) + ")";
 		};
 
 		StringBuffer output = new StringBuffer();
@@ -0,0 +1,66 @@
+package edu.rit.goal.graph;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Maps predicate names to ids (and back). Ids are given in the order of the names, so comparing ids is the same as
+// comparing names; signatures and the lattice are sorted the same way as before. Names are only needed when reading
+// or writing predicates (Neo4j, the lattice, reports); everything else uses ids. Predicates added later (see
+// GraphDatabase.addTriple) take the next ids, so only the ones loaded at the beginning follow the order of the names.
+public class PredicateDictionary {
+	volatile String[] names;
+
+	Map<String, Integer> ids;
+
+	public PredicateDictionary(Collection<String> predicates) {
+		super();
+
+		names = new TreeSet<>(predicates).toArray(new String[0]);
+
+		ids = new ConcurrentHashMap<>();
+		for (int i = 0; i < names.length; i++)
+			ids.put(names[i], i);
+	}
+
+	public int getId(String name) {
+		Integer id = ids.get(name);
+
+		if (id == null)
+			throw new RuntimeException("Predicate " + name + " not found!");
+
+		return id;
+	}
+
+	public boolean contains(String name) {
+		return ids.containsKey(name);
+	}
+
+	// Returns the id of the predicate, adding it if it is new.
+	public synchronized int add(String name) {
+		Integer id = ids.get(name);
+
+		if (id == null) {
+			id = names.length;
+
+			String[] newNames = Arrays.copyOf(names, id + 1);
+			newNames[id] = name;
+
+			names = newNames;
+			ids.put(name, id);
+		}
+
+		return id;
+	}
+
+	public String getName(int id) {
+		return names[id];
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+}
@@ -13,14 +13,13 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.eclipse.collections.api.factory.Lists;
-import org.eclipse.collections.api.factory.primitive.IntLists;
 import org.eclipse.collections.api.list.MutableList;
-import org.eclipse.collections.api.list.primitive.ImmutableIntList;
-import org.eclipse.collections.api.set.MutableSet;
-import org.eclipse.collections.api.set.primitive.MutableIntSet;
 import org.jgrapht.alg.connectivity.ConnectivityInspector;
 import org.jgrapht.graph.DirectedMultigraph;
 
+import edu.rit.goal.graph.index.PairCursor;
+import edu.rit.goal.graph.index.PredicateIndex;
+
 public class RandomWalk {
 	GraphDatabase db;
 
@@ -34,7 +33,7 @@ public class RandomWalk {
 	Integer length;
 
 	// This is whether to consider the predicate.
-	String head;
+	Integer head;
 
 	// This is whether to consider the total number of nodes.
 	Integer totalNumberOfNodes;
@@ -45,6 +44,9 @@ public class RandomWalk {
 	// This is the selected split (if any).
 	Integer split;
 
+	// This is reused to iterate over pairs.
+	PairCursor cursor = new PairCursor();
+
 	public RandomWalk(GraphDatabase db) {
 		this.db = db;
 	}
@@ -62,7 +64,7 @@ public class RandomWalk {
 	}
 
 	public void setHead(String predicate) {
-		this.head = predicate;
+		this.head = predicate == null ? null : db.getDictionary().getId(predicate);
 	}
 
 	public void setTotalNumberOfNodes(Integer totalNumberOfNodes) {
@@ -75,6 +77,7 @@ public class RandomWalk {
 
 	public void setSplit(Integer split) {
 		this.split = split;
+		this.db = db.getView(split);
 	}
 
 	public class Walk {
@@ -113,7 +116,7 @@ public class RandomWalk {
 
 				if (row != null) {
 					int s = (Integer) row.get("s"), o = (Integer) row.get("o");
-					String p = (String) row.get("p");
+					int p = (Integer) row.get("p");
 
 					LabeledEdge added = addEdgeToWalk(walk, s, p, o, tid);
 
@@ -145,7 +148,7 @@ public class RandomWalk {
 
 					Iterator<Integer> it = nonClosedVertices.iterator();
 
-					Map<String, Set<Entry<Integer, Integer>>> edgesInWalk = new HashMap<>();
+					Map<Integer, Set<Entry<Integer, Integer>>> edgesInWalk = new HashMap<>();
 					for (LabeledEdge e : walk.edgeSet()) {
 						int u = walk.getEdgeSource(e), up = walk.getEdgeTarget(e);
 
@@ -155,20 +158,18 @@ public class RandomWalk {
 
 					Set<Integer> verticesInWalk = walk.vertexSet();
 
-					Map<String, MutableList<Entry<Integer, Integer>>> newTriples = new HashMap<>();
+					Map<Integer, MutableList<Entry<Integer, Integer>>> newTriples = new HashMap<>();
 
 					// There are two of them: find all edges between them.
 					if (nonClosedVertices.size() == 2) {
 						int u = it.next(), v = it.next();
 						Entry<Integer, Integer> pair = Map.entry(u, v);
 
-						for (String currentP : db.getPredicates()) {
+						for (int currentP : db.getPredicates()) {
 							newTriples.putIfAbsent(currentP, Lists.mutable.empty());
 
-							MutableSet<Entry<Integer, Integer>> set = db.getCandidatesBySubjectAsSet(currentP, u);
-
 							// It is there but the edge is not yet in the walk.
-							if (set != null && set.contains(pair) && (!edgesInWalk.containsKey(currentP)
+							if (db.hasTriple(currentP, u, v) && (!edgesInWalk.containsKey(currentP)
 									|| !edgesInWalk.get(currentP).contains(pair)))
 								newTriples.get(currentP).add(pair);
 						}
@@ -178,26 +179,30 @@ public class RandomWalk {
 					if (nonClosedVertices.size() == 1) {
 						int u = it.next();
 
-						for (String currentP : db.getPredicates()) {
+						for (int currentP : db.getPredicates()) {
 							newTriples.putIfAbsent(currentP, Lists.mutable.empty());
 
-							MutableSet<Entry<Integer, Integer>> set = db.getCandidatesBySubjectAsSet(currentP, u);
+							PairCursor cursor = db.getCandidatesBySubject(currentP, u, this.cursor);
 
 							// It is there but the edge is not yet in the walk.
-							if (set != null)
-								for (Entry<Integer, Integer> pair : set)
-									if (verticesInWalk.contains(pair.getValue()) && (!edgesInWalk.containsKey(currentP)
-											|| !edgesInWalk.get(currentP).contains(pair)))
+							while (cursor.next())
+								if (verticesInWalk.contains(cursor.object())) {
+									Entry<Integer, Integer> pair = Map.entry(cursor.subject(), cursor.object());
+
+									if (!edgesInWalk.containsKey(currentP) || !edgesInWalk.get(currentP).contains(pair))
 										newTriples.get(currentP).add(pair);
+								}
 
-							set = db.getCandidatesByObjectAsSet(currentP, u);
+							cursor = db.getCandidatesByObject(currentP, u, this.cursor);
 
 							// It is there but the edge is not yet in the walk.
-							if (set != null)
-								for (Entry<Integer, Integer> pair : set)
-									if (verticesInWalk.contains(pair.getKey()) && (!edgesInWalk.containsKey(currentP)
-											|| !edgesInWalk.get(currentP).contains(pair)))
+							while (cursor.next())
+								if (verticesInWalk.contains(cursor.subject())) {
+									Entry<Integer, Integer> pair = Map.entry(cursor.subject(), cursor.object());
+
+									if (!edgesInWalk.containsKey(currentP) || !edgesInWalk.get(currentP).contains(pair))
 										newTriples.get(currentP).add(pair);
+								}
 						}
 					}
 
@@ -207,21 +212,18 @@ public class RandomWalk {
 							for (int v : verticesInWalk) {
 								Entry<Integer, Integer> pair = Map.entry(u, v);
 
-								for (String currentP : db.getPredicates()) {
+								for (int currentP : db.getPredicates()) {
 									newTriples.putIfAbsent(currentP, Lists.mutable.empty());
 
-									MutableSet<Entry<Integer, Integer>> set = db.getCandidatesBySubjectAsSet(currentP,
-											u);
-
 									// It is there but the edge is not yet in the walk.
-									if (set != null && set.contains(pair) && (!edgesInWalk.containsKey(currentP)
+									if (db.hasTriple(currentP, u, v) && (!edgesInWalk.containsKey(currentP)
 											|| !edgesInWalk.get(currentP).contains(pair)))
 										newTriples.get(currentP).add(pair);
 								}
 							}
 
 					// Remove all empty predicates.
-					for (String key : new HashSet<>(newTriples.keySet()))
+					for (Integer key : new HashSet<>(newTriples.keySet()))
 						if (newTriples.get(key).isEmpty())
 							newTriples.remove(key);
 
@@ -231,9 +233,9 @@ public class RandomWalk {
 
 					// Choose one of these randomly and we are done! If there are multiple and we
 					// fail, we were really close. It is worthy to try them all.
-					List<String> predicates = new ArrayList<>(newTriples.keySet());
+					List<Integer> predicates = new ArrayList<>(newTriples.keySet());
 
-					String p = predicates.get(ThreadLocalRandom.current().nextInt(predicates.size()));
+					int p = predicates.get(ThreadLocalRandom.current().nextInt(predicates.size()));
 
 					MutableList<Entry<Integer, Integer>> list = newTriples.get(p);
 
@@ -262,7 +264,7 @@ public class RandomWalk {
 
 					if (row != null) {
 						int s = (Integer) row.get("s"), o = (Integer) row.get("o");
-						String p = (String) row.get("p");
+						int p = (Integer) row.get("p");
 
 						LabeledEdge added = addEdgeToWalk(walk, s, p, o, tid);
 
@@ -317,8 +319,8 @@ public class RandomWalk {
 		return nodes.size();
 	}
 
-	private int getTotalNumberOfPredicates(DirectedMultigraph<Integer, LabeledEdge> walk, String extra) {
-		Set<String> predicates = walk.edgeSet().stream().map(edge -> edge.predicate).collect(Collectors.toSet());
+	private int getTotalNumberOfPredicates(DirectedMultigraph<Integer, LabeledEdge> walk, Integer extra) {
+		Set<Integer> predicates = walk.edgeSet().stream().map(edge -> edge.predicate).collect(Collectors.toSet());
 
 		if (extra != null)
 			predicates.add(extra);
@@ -326,7 +328,7 @@ public class RandomWalk {
 		return predicates.size();
 	}
 
-	private LabeledEdge addEdgeToWalk(DirectedMultigraph<Integer, LabeledEdge> walk, int s, String p, int o,
+	private LabeledEdge addEdgeToWalk(DirectedMultigraph<Integer, LabeledEdge> walk, int s, int p, int o,
 			AtomicInteger tid) {
 		// If the edge did not exist already and s is equals to o (it can happen!).
 		if (!edgeExists(s, p, o, walk) && s != o) {
@@ -361,13 +363,13 @@ public class RandomWalk {
 	// cached, we cannot have easy access to tid anymore, so we need to do it the
 	// old-fashioned way... checking one by one! It shouldn't be that bad, but less
 	// elegant for sure.
-	private boolean edgeExists(int s, String p, int o, DirectedMultigraph<Integer, LabeledEdge> walk) {
+	private boolean edgeExists(int s, int p, int o, DirectedMultigraph<Integer, LabeledEdge> walk) {
 		boolean found = false;
 
 		for (LabeledEdge e : walk.edgeSet()) {
 			int x = walk.getEdgeSource(e), y = walk.getEdgeTarget(e);
 
-			if (x == s && y == o && p.equals(e.predicate)) {
+			if (x == s && y == o && p == e.predicate) {
 				found = true;
 				break;
 			}
@@ -378,9 +380,9 @@ public class RandomWalk {
 
 	private class RandomNeighborChoice {
 		boolean subject, object;
-		String predicate;
+		int predicate;
 
-		public RandomNeighborChoice(boolean subject, boolean object, String predicate) {
+		public RandomNeighborChoice(boolean subject, boolean object, int predicate) {
 			super();
 			this.subject = subject;
 			this.object = object;
@@ -388,18 +390,18 @@ public class RandomWalk {
 		}
 	}
 
-	private Map<String, Object> getRandomNeighbor(Integer u, String p) {
+	private Map<String, Object> getRandomNeighbor(Integer u, Integer p) {
 		// Getting all choices of u (subject/object and p).
 		List<RandomNeighborChoice> choices = new ArrayList<>();
 
-		Set<String> predicatesToCheck = new HashSet<>();
+		Set<Integer> predicatesToCheck = new HashSet<>();
 		if (p == null)
 			predicatesToCheck.addAll(db.getPredicates());
 		else
 			predicatesToCheck.add(p);
 
 		if (u == null) {
-			for (String currentP : predicatesToCheck) {
+			for (int currentP : predicatesToCheck) {
 				choices.add(new RandomNeighborChoice(true, false, currentP));
 				choices.add(new RandomNeighborChoice(false, true, currentP));
 			}
@@ -411,29 +413,35 @@ public class RandomWalk {
 			// Get random choice.
 			RandomNeighborChoice choice = choices.get(ThreadLocalRandom.current().nextInt(choices.size()));
 
-			MutableIntSet set = null;
-			ImmutableIntList list = null;
+			// The index gives us direct access to the subjects and objects. Rows can be empty in the view of a split,
+			// so we try again.
+			PredicateIndex index = db.getIndex(choice.predicate);
+			int row;
 
-			if (choice.subject)
-				// Creating the list for direct access. Not great, but what to do.
-				set = db.getCandidatesAllSubjects(choice.predicate);
+			if (choice.subject) {
+				do
+					row = ThreadLocalRandom.current().nextInt(index.getSubjectCount());
+				while (index.getSubjectRowDegree(row) == 0);
 
-			if (choice.object)
-				// Creating the list for direct access. Not great, but what to do.
-				set = db.getCandidatesAllObjects(choice.predicate);
+				u = index.getSubject(row);
+			}
 
-			list = IntLists.immutable.ofAll(set);
+			if (choice.object) {
+				do
+					row = ThreadLocalRandom.current().nextInt(index.getObjectCount());
+				while (index.getObjectRowDegree(row) == 0);
 
-			u = list.get(ThreadLocalRandom.current().nextInt(list.size()));
+				u = index.getObject(row);
+			}
 		}
 
 		// Getting all choices of u (subject/object and p).
 		choices.clear();
-		for (String currentP : predicatesToCheck) {
-			if (db.getCandidatesBySubjectAsList(currentP, u) != null)
+		for (int currentP : predicatesToCheck) {
+			if (db.getSubjectDegree(currentP, u) > 0)
 				choices.add(new RandomNeighborChoice(true, false, currentP));
 
-			if (db.getCandidatesByObjectAsList(currentP, u) != null)
+			if (db.getObjectDegree(currentP, u) > 0)
 				choices.add(new RandomNeighborChoice(false, true, currentP));
 		}
 
@@ -444,22 +452,27 @@ public class RandomWalk {
 		// Get random choice.
 		RandomNeighborChoice choice = choices.get(ThreadLocalRandom.current().nextInt(choices.size()));
 
-		MutableList<Entry<Integer, Integer>> list = null;
+		PairCursor list = null;
 
 		if (choice.subject)
-			list = db.getCandidatesBySubjectAsList(choice.predicate, u);
+			list = db.getCandidatesBySubject(choice.predicate, u, cursor);
 
 		if (choice.object)
-			list = db.getCandidatesByObjectAsList(choice.predicate, u);
+			list = db.getCandidatesByObject(choice.predicate, u, cursor);
+
+		// A compaction in between can take the pairs away.
+		if (list.size() == 0)
+			return null;
 
-		Entry<Integer, Integer> pair = list.get(ThreadLocalRandom.current().nextInt(list.size()));
+		int idx = ThreadLocalRandom.current().nextInt(list.size());
+		int s = list.getSubject(idx), o = list.getObject(idx);
 
 		Map<String, Object> row = new HashMap<>();
 
-		row.put("s", pair.getKey());
-		row.put("o", pair.getValue());
+		row.put("s", s);
+		row.put("o", o);
 		row.put("p", choice.predicate);
-		row.put("neighbor", (u == pair.getKey()) ? pair.getValue() : pair.getKey());
+		row.put("neighbor", (u == s) ? o : s);
 
 		return row;
 	}
@@ -0,0 +1,276 @@
+package edu.rit.goal.graph.index;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// Binary snapshot of everything GraphDatabase loads from Neo4j: the entities and the index of each predicate with all
+// the splits. The file is memory-mapped when loading, so the columns of the indexes are slices of the file and nothing
+// is copied; several processes mapping the same file share the same pages.
+//
+// Layout (native byte order, every section starts at a multiple of 8 bytes):
+// magic (long), version, number of splits, number of entities, number of predicates (ints), number of entities and
+// triples of the source (longs), entities (ints).
+// Then, for each predicate: name length (int), name (UTF-8 bytes), number of pairs, number of subjects, number of
+// objects, capacity of the pair set (ints), the columns of the index (ints, one offset column per split) and the table
+// of the pair set (longs).
+//
+// The snapshot is not updated when Neo4j changes. Instead, it keeps how many entities and triples its source had, which
+// Neo4j counts for free, and GraphDatabase builds it again if the store does not have them anymore (see isSnapshotOf).
+// Changes that keep both counts are not noticed; just delete the file to rebuild it.
+public class GraphSnapshot {
+	static final long MAGIC = 0x52514553_4E415053L;
+	static final int VERSION = 4;
+
+	// Everything up to the entities.
+	static final int HEADER_BYTES = 40;
+
+	public int[] entities;
+
+	public Map<String, PredicateIndex> predicateIndexes;
+
+	public long sourceEntities, sourceTriples;
+
+	public GraphSnapshot(int[] entities, Map<String, PredicateIndex> predicateIndexes, long sourceEntities,
+			long sourceTriples) {
+		super();
+		this.entities = entities;
+		this.predicateIndexes = predicateIndexes;
+		this.sourceEntities = sourceEntities;
+		this.sourceTriples = sourceTriples;
+	}
+
+	public void write(Path file) {
+		// First pass to get the size, second pass to actually write.
+		Writer sizing = new Writer(null);
+		write(sizing);
+
+		// Write to a temporary file and move it, so no one maps a half-written snapshot.
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (Arena arena = Arena.ofConfined();
+				FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			write(new Writer(channel.map(MapMode.READ_WRITE, 0, sizing.offset, arena)));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		try {
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void write(Writer w) {
+		w.putLong(MAGIC);
+		w.putInt(VERSION);
+		w.putInt(PredicateIndex.SPLITS);
+		w.putInt(entities.length);
+		w.putInt(predicateIndexes.size());
+		w.align();
+		w.putLong(sourceEntities);
+		w.putLong(sourceTriples);
+		w.putColumn(MemorySegment.ofArray(entities));
+
+		for (String p : predicateIndexes.keySet()) {
+			PredicateIndex index = predicateIndexes.get(p).view(PredicateIndex.ALL);
+
+			byte[] name = p.getBytes(StandardCharsets.UTF_8);
+			w.putInt(name.length);
+			w.putBytes(name);
+			w.align();
+
+			w.putInt(index.size());
+			w.putInt(index.getSubjectCount());
+			w.putInt(index.getObjectCount());
+			w.putInt(index.pairs.capacity());
+
+			w.putColumn(index.subjects);
+			for (MemorySegment offsets : index.subjectOffsets)
+				w.putColumn(offsets);
+			w.putColumn(index.objectsBySubject);
+			w.putColumn(index.objects);
+			for (MemorySegment offsets : index.objectOffsets)
+				w.putColumn(offsets);
+			w.putColumn(index.subjectsByObject);
+			w.putColumn(index.pairs.table);
+		}
+	}
+
+	// Maps the file; the mapping lives as long as the indexes are reachable.
+	public static GraphSnapshot read(Path file) {
+		MemorySegment in;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			in = channel.map(MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		Reader r = new Reader(in);
+
+		if (r.getLong() != MAGIC)
+			throw new RuntimeException("Not a snapshot: " + file);
+
+		int version = r.getInt();
+		if (version != VERSION)
+			throw new RuntimeException("Snapshot version " + version + " is not supported: " + file);
+
+		int splits = r.getInt(), entityCount = r.getInt(), predicateCount = r.getInt();
+		if (splits != PredicateIndex.SPLITS)
+			throw new RuntimeException("Snapshot has " + splits + " splits: " + file);
+
+		r.align();
+		long sourceEntities = r.getLong(), sourceTriples = r.getLong();
+		int[] entities = r.getColumn(entityCount).toArray(ValueLayout.JAVA_INT);
+
+		Map<String, PredicateIndex> predicateIndexes = new HashMap<>();
+
+		for (int i = 0; i < predicateCount; i++) {
+			String p = new String(r.getBytes(r.getInt()), StandardCharsets.UTF_8);
+			r.align();
+
+			int size = r.getInt(), subjectCount = r.getInt(), objectCount = r.getInt(), capacity = r.getInt();
+
+			MemorySegment subjects = r.getColumn(subjectCount);
+			MemorySegment[] subjectOffsets = r.getColumns(subjectCount + 1);
+			MemorySegment objectsBySubject = r.getColumn(size), objects = r.getColumn(objectCount);
+			MemorySegment[] objectOffsets = r.getColumns(objectCount + 1);
+			MemorySegment subjectsByObject = r.getColumn(size);
+
+			predicateIndexes.put(p, new PredicateIndex(subjects, subjectOffsets, objectsBySubject, objects,
+					objectOffsets, subjectsByObject, new PairSet(r.getColumn(capacity, Long.BYTES))));
+		}
+
+		return new GraphSnapshot(entities, predicateIndexes, sourceEntities, sourceTriples);
+	}
+
+	// Whether the file is a snapshot of this version whose source had these many entities and triples; only the header
+	// is read.
+	public static boolean isSnapshotOf(Path file, long sourceEntities, long sourceTriples) {
+		try (Arena arena = Arena.ofConfined(); FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES)
+				return false;
+
+			Reader r = new Reader(channel.map(MapMode.READ_ONLY, 0, HEADER_BYTES, arena));
+
+			if (r.getLong() != MAGIC || r.getInt() != VERSION || r.getInt() != PredicateIndex.SPLITS)
+				return false;
+
+			// Entities and predicates.
+			r.getInt();
+			r.getInt();
+			r.align();
+
+			return r.getLong() == sourceEntities && r.getLong() == sourceTriples;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// Writes sequentially; with no segment, it only moves the offset.
+	private static class Writer {
+		MemorySegment out;
+		long offset;
+
+		Writer(MemorySegment out) {
+			this.out = out;
+		}
+
+		void putLong(long value) {
+			if (out != null)
+				out.set(ValueLayout.JAVA_LONG, offset, value);
+			offset += Long.BYTES;
+		}
+
+		void putInt(int value) {
+			if (out != null)
+				out.set(ValueLayout.JAVA_INT, offset, value);
+			offset += Integer.BYTES;
+		}
+
+		void putBytes(byte[] bytes) {
+			if (out != null)
+				MemorySegment.copy(bytes, 0, out, ValueLayout.JAVA_BYTE, offset, bytes.length);
+			offset += bytes.length;
+		}
+
+		void putColumn(MemorySegment column) {
+			align();
+			if (out != null)
+				MemorySegment.copy(column, 0, out, offset, column.byteSize());
+			offset += column.byteSize();
+		}
+
+		void align() {
+			while (offset % Long.BYTES != 0) {
+				if (out != null)
+					out.set(ValueLayout.JAVA_BYTE, offset, (byte) 0);
+				offset++;
+			}
+		}
+	}
+
+	private static class Reader {
+		MemorySegment in;
+		long offset;
+
+		Reader(MemorySegment in) {
+			this.in = in;
+		}
+
+		long getLong() {
+			long value = in.get(ValueLayout.JAVA_LONG, offset);
+			offset += Long.BYTES;
+			return value;
+		}
+
+		int getInt() {
+			int value = in.get(ValueLayout.JAVA_INT, offset);
+			offset += Integer.BYTES;
+			return value;
+		}
+
+		byte[] getBytes(int length) {
+			byte[] bytes = new byte[length];
+			MemorySegment.copy(in, ValueLayout.JAVA_BYTE, offset, bytes, 0, length);
+			offset += length;
+			return bytes;
+		}
+
+		MemorySegment getColumn(int length) {
+			return getColumn(length, Integer.BYTES);
+		}
+
+		// One column per split.
+		MemorySegment[] getColumns(int length) {
+			MemorySegment[] columns = new MemorySegment[PredicateIndex.SPLITS];
+			for (int t = 0; t < columns.length; t++)
+				columns[t] = getColumn(length);
+			return columns;
+		}
+
+		// A slice of the file; nothing is copied.
+		MemorySegment getColumn(int length, int bytes) {
+			align();
+			MemorySegment column = in.asSlice(offset, (long) length * bytes);
+			offset += column.byteSize();
+			return column;
+		}
+
+		void align() {
+			offset = (offset + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+		}
+	}
+
+}
@@ -0,0 +1,14 @@
+package edu.rit.goal.graph.index;
+
+import java.lang.foreign.Arena;
+
+// Where the columns of the indexes live. Built indexes are on the heap by default; off-heap, every index gets its own
+// automatic arena, so the garbage collector never scans the columns and the memory is freed when the index is no
+// longer used (e.g., after a compaction). Indexes mapped from a snapshot are always off-heap.
+public enum IndexStorage {
+	Heap, OffHeap;
+
+	public PredicateIndex store(PredicateIndex index) {
+		return this == OffHeap ? index.copyTo(Arena.ofAuto()) : index;
+	}
+}
@@ -0,0 +1,159 @@
+package edu.rit.goal.graph.index;
+
+// Iterates over (subject, object) pairs of a predicate index without allocating. The accessors in GraphDatabase reset
+// a given cursor, so a single instance can be reused across calls. Pairs can be visited in order (next) or accessed by
+// position (getSubject and getObject).
+public class PairCursor {
+	enum Mode {
+		Empty, Scan, Subject, Object, Single
+	}
+
+	private Mode mode = Mode.Empty;
+	private PredicateIndex index;
+
+	// Positions to visit in the index arrays, and the row being scanned.
+	private int from, to, pos, row;
+
+	// The fixed subject or object of the slice, and the current pair.
+	private int key, s, o;
+
+	public PairCursor clear() {
+		mode = Mode.Empty;
+		index = null;
+		from = to = 0;
+		return rewind();
+	}
+
+	// All the pairs of the predicate.
+	public PairCursor scan(PredicateIndex index) {
+		if (index == null)
+			return clear();
+
+		this.mode = Mode.Scan;
+		this.index = index;
+		this.from = 0;
+		this.to = index.size();
+		return rewind();
+	}
+
+	// All the pairs (s, *) of the predicate.
+	public PairCursor bySubject(PredicateIndex index, int s) {
+		int r = index == null ? -1 : index.getSubjectRow(s);
+
+		if (r < 0)
+			return clear();
+
+		this.mode = Mode.Subject;
+		this.index = index;
+		this.key = s;
+		this.from = index.subjectOffset(r);
+		this.to = from + index.getSubjectRowDegree(r);
+		return rewind();
+	}
+
+	// All the pairs (*, o) of the predicate.
+	public PairCursor byObject(PredicateIndex index, int o) {
+		int r = index == null ? -1 : index.getObjectRow(o);
+
+		if (r < 0)
+			return clear();
+
+		this.mode = Mode.Object;
+		this.index = index;
+		this.key = o;
+		this.from = index.objectOffset(r);
+		this.to = from + index.getObjectRowDegree(r);
+		return rewind();
+	}
+
+	// A single pair.
+	public PairCursor single(int s, int o) {
+		this.mode = Mode.Single;
+		this.index = null;
+		this.s = s;
+		this.o = o;
+		this.from = 0;
+		this.to = 1;
+		return rewind();
+	}
+
+	// Go back to the beginning.
+	public PairCursor rewind() {
+		pos = from;
+		row = -1;
+		return this;
+	}
+
+	public int size() {
+		return to - from;
+	}
+
+	public boolean isEmpty() {
+		return to == from;
+	}
+
+	public boolean next() {
+		if (pos >= to)
+			return false;
+
+		switch (mode) {
+		case Scan -> {
+			// Move to the row that contains the current position; positions only count the pairs in the view.
+			while (row < 0 || index.subjectSplitOffset(row + 1) <= pos)
+				row++;
+
+			s = index.getSubject(row);
+			o = index.objectBySubject(index.subjectOffset(row) + pos - index.subjectSplitOffset(row));
+		}
+		case Subject -> {
+			s = key;
+			o = index.objectBySubject(pos);
+		}
+		case Object -> {
+			s = index.subjectByObject(pos);
+			o = key;
+		}
+		default -> {
+			// Single pair: nothing to do.
+		}
+		}
+
+		pos++;
+
+		return true;
+	}
+
+	public int subject() {
+		return s;
+	}
+
+	public int object() {
+		return o;
+	}
+
+	// The subject of the i-th pair of the cursor.
+	public int getSubject(int i) {
+		return switch (mode) {
+		case Scan -> index.getSubject(index.getSubjectRowOfPair(from + i));
+		case Subject -> key;
+		case Object -> index.subjectByObject(from + i);
+		case Single -> s;
+		default -> throw new IndexOutOfBoundsException(i);
+		};
+	}
+
+	// The object of the i-th pair of the cursor.
+	public int getObject(int i) {
+		return switch (mode) {
+		case Scan -> {
+			int r = index.getSubjectRowOfPair(from + i);
+			yield index.objectBySubject(index.subjectOffset(r) + from + i - index.subjectSplitOffset(r));
+		}
+		case Subject -> index.objectBySubject(from + i);
+		case Object -> key;
+		case Single -> o;
+		default -> throw new IndexOutOfBoundsException(i);
+		};
+	}
+
+}
@@ -0,0 +1,76 @@
+package edu.rit.goal.graph.index;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+
+// Open-addressing hash set of (subject, object) pairs with linear probing. Each pair is packed into a long with its
+// split: subject in the high bits, then the object, and the split in the lowest two bits. The table is a memory
+// segment, so it can be a slice of a snapshot like the rest of the index. Membership checks do not allocate.
+public class PairSet {
+	// Entity ids are non-negative and splits are less than 3, so no pair is packed into this.
+	static final long EMPTY = -1l, SPLIT_MASK = 3l;
+
+	final MemorySegment table;
+	final int mask;
+
+	PairSet(MemorySegment table) {
+		this.table = table;
+		this.mask = (int) (table.byteSize() / Long.BYTES) - 1;
+	}
+
+	// The first n keys are distinct pairs packed with their splits; the table is at most half full.
+	static PairSet of(long[] keys, int n) {
+		int capacity = Integer.highestOneBit(Math.max(1, n) * 2 - 1) << 1;
+
+		long[] table = new long[capacity];
+		Arrays.fill(table, EMPTY);
+
+		for (int i = 0; i < n; i++) {
+			int slot = hash(keys[i] & ~SPLIT_MASK) & (capacity - 1);
+			while (table[slot] != EMPTY)
+				slot = (slot + 1) & (capacity - 1);
+
+			table[slot] = keys[i];
+		}
+
+		return new PairSet(MemorySegment.ofArray(table));
+	}
+
+	PairSet copyTo(Arena arena) {
+		return new PairSet(PredicateIndex.copy(table, arena));
+	}
+
+	// Whether the pair is there with split <= the given one.
+	public boolean contains(int s, int o, int split) {
+		long key = pack(s, o, 0);
+
+		for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+			long current = table.getAtIndex(ValueLayout.JAVA_LONG, slot);
+
+			if (current == EMPTY)
+				return false;
+
+			if ((current & ~SPLIT_MASK) == key)
+				return (current & SPLIT_MASK) <= split;
+		}
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+
+	static long pack(int s, int o, int split) {
+		return ((long) s << 33) | ((long) o << 2) | split;
+	}
+
+	// Spread the bits (from MurmurHash3's finalizer), so that pairs with the same subject do not collide.
+	static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdl;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+}
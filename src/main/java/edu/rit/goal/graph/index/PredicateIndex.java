@@ -0,0 +1,227 @@
+package edu.rit.goal.graph.index;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+// Compressed sparse row (CSR) index of the pairs of a single predicate. Pairs are stored twice: grouped by subject
+// (sorted distinct subjects, each with its objects) and grouped by object (sorted distinct objects, each with its
+// subjects). Columns are memory segments of ints: they wrap plain arrays when the index is built in the heap, and they
+// are slices of a mapped file when the index is loaded from a snapshot.
+//
+// Every pair has a split (0 is train, 1 is valid, 2 is test). Within a row, pairs are sorted by split and then by
+// entity, so the pairs of splits <= t are a prefix of the row. For every t, there are offsets that count the pairs of
+// splits <= t in the previous rows. A view of the index for split t shares all the columns and only looks at those
+// prefixes; rows can be empty in a view.
+public class PredicateIndex {
+	public static final int SPLITS = 3, ALL = SPLITS - 1;
+
+	// Sorted distinct subjects; the objects of the subject in row r start at subjectOffsets[ALL][r], and there are
+	// subjectOffsets[t][r+1] - subjectOffsets[t][r] of them with split <= t.
+	final MemorySegment subjects, objectsBySubject;
+	final MemorySegment[] subjectOffsets;
+
+	// Sorted distinct objects; same as above.
+	final MemorySegment objects, subjectsByObject;
+	final MemorySegment[] objectOffsets;
+
+	// All the pairs for constant-time membership checks.
+	final PairSet pairs;
+
+	final int split, size, subjectCount, objectCount;
+
+	PredicateIndex(MemorySegment subjects, MemorySegment[] subjectOffsets, MemorySegment objectsBySubject,
+			MemorySegment objects, MemorySegment[] objectOffsets, MemorySegment subjectsByObject, PairSet pairs) {
+		super();
+		this.subjects = subjects;
+		this.subjectOffsets = subjectOffsets;
+		this.objectsBySubject = objectsBySubject;
+		this.objects = objects;
+		this.objectOffsets = objectOffsets;
+		this.subjectsByObject = subjectsByObject;
+		this.pairs = pairs;
+
+		this.split = ALL;
+		this.subjectCount = count(subjects);
+		this.objectCount = count(objects);
+		this.size = get(subjectOffsets[split], subjectCount);
+	}
+
+	// A view with the pairs of splits <= split.
+	private PredicateIndex(PredicateIndex index, int split) {
+		super();
+		this.subjects = index.subjects;
+		this.subjectOffsets = index.subjectOffsets;
+		this.objectsBySubject = index.objectsBySubject;
+		this.objects = index.objects;
+		this.objectOffsets = index.objectOffsets;
+		this.subjectsByObject = index.subjectsByObject;
+		this.pairs = index.pairs;
+
+		this.split = split;
+		this.subjectCount = index.subjectCount;
+		this.objectCount = index.objectCount;
+		this.size = get(subjectOffsets[split], subjectCount);
+	}
+
+	public PredicateIndex view(int split) {
+		if (split < 0 || split > ALL)
+			throw new RuntimeException("Split " + split + " does not exist!");
+
+		return split == this.split ? this : new PredicateIndex(this, split);
+	}
+
+	// The same index with all its columns copied to the arena.
+	public PredicateIndex copyTo(Arena arena) {
+		return new PredicateIndex(copy(subjects, arena), copy(subjectOffsets, arena), copy(objectsBySubject, arena),
+				copy(objects, arena), copy(objectOffsets, arena), copy(subjectsByObject, arena), pairs.copyTo(arena))
+				.view(split);
+	}
+
+	static MemorySegment copy(MemorySegment column, Arena arena) {
+		return arena.allocate(column.byteSize(), Long.BYTES).copyFrom(column);
+	}
+
+	private static MemorySegment[] copy(MemorySegment[] columns, Arena arena) {
+		MemorySegment[] ret = new MemorySegment[columns.length];
+		for (int t = 0; t < columns.length; t++)
+			ret[t] = copy(columns[t], arena);
+		return ret;
+	}
+
+	public int getSplit() {
+		return split;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Rows, including the ones that are empty in this view.
+	public int getSubjectCount() {
+		return subjectCount;
+	}
+
+	public int getObjectCount() {
+		return objectCount;
+	}
+
+	// The subject in the given row.
+	public int getSubject(int row) {
+		return get(subjects, row);
+	}
+
+	// The object in the given row.
+	public int getObject(int row) {
+		return get(objects, row);
+	}
+
+	// Returns the row of the subject, or a negative value if it is not a subject of this predicate.
+	public int getSubjectRow(int s) {
+		return binarySearch(subjects, 0, subjectCount, s);
+	}
+
+	// Returns the row of the object, or a negative value if it is not an object of this predicate.
+	public int getObjectRow(int o) {
+		return binarySearch(objects, 0, objectCount, o);
+	}
+
+	public boolean hasSubject(int s) {
+		return getSubjectDegree(s) > 0;
+	}
+
+	public boolean hasObject(int o) {
+		return getObjectDegree(o) > 0;
+	}
+
+	// Number of objects of the given subject.
+	public int getSubjectDegree(int s) {
+		int row = getSubjectRow(s);
+		return row < 0 ? 0 : getSubjectRowDegree(row);
+	}
+
+	// Number of subjects of the given object.
+	public int getObjectDegree(int o) {
+		int row = getObjectRow(o);
+		return row < 0 ? 0 : getObjectRowDegree(row);
+	}
+
+	public int getSubjectRowDegree(int row) {
+		return get(subjectOffsets[split], row + 1) - get(subjectOffsets[split], row);
+	}
+
+	public int getObjectRowDegree(int row) {
+		return get(objectOffsets[split], row + 1) - get(objectOffsets[split], row);
+	}
+
+	public boolean contains(int s, int o) {
+		return pairs.contains(s, o, split);
+	}
+
+	// Where the objects of the subject in the row start.
+	int subjectOffset(int row) {
+		return get(subjectOffsets[ALL], row);
+	}
+
+	// Where the subjects of the object in the row start.
+	int objectOffset(int row) {
+		return get(objectOffsets[ALL], row);
+	}
+
+	// Number of pairs in this view in the rows before the given one.
+	int subjectSplitOffset(int row) {
+		return get(subjectOffsets[split], row);
+	}
+
+	int objectBySubject(int i) {
+		return get(objectsBySubject, i);
+	}
+
+	int subjectByObject(int i) {
+		return get(subjectsByObject, i);
+	}
+
+	// The i-th pair of this view grouped by subject is in row r, where r is the last row whose offset in this view is
+	// not greater than i. Empty rows share their offset with the next row, so they are skipped.
+	int getSubjectRowOfPair(int i) {
+		int lo = 0, hi = subjectCount - 1;
+
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+
+			if (subjectSplitOffset(mid) <= i)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+
+		return lo;
+	}
+
+	static int get(MemorySegment column, int i) {
+		return column.getAtIndex(ValueLayout.JAVA_INT, i);
+	}
+
+	static int count(MemorySegment column) {
+		return (int) (column.byteSize() / Integer.BYTES);
+	}
+
+	// Same contract as Arrays.binarySearch over [from, to).
+	static int binarySearch(MemorySegment column, int from, int to, int key) {
+		int lo = from, hi = to - 1;
+
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1, value = get(column, mid);
+
+			if (value < key)
+				lo = mid + 1;
+			else if (value > key)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+
+		return -(lo + 1);
+	}
+
+}
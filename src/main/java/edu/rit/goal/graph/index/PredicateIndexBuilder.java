@@ -0,0 +1,197 @@
+package edu.rit.goal.graph.index;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+
+import org.eclipse.collections.api.factory.primitive.LongLists;
+import org.eclipse.collections.api.list.primitive.MutableLongList;
+
+// Collects the pairs of a single predicate and builds its CSR index. Pairs are packed into longs like in PairSet
+// (subject, object, split) with the sign bit flipped, so sorting them groups by subject, then by object, then by
+// split. Entity ids are non-negative.
+public class PredicateIndexBuilder {
+	private MutableLongList pairs = LongLists.mutable.empty();
+
+	// If not null, the order in which the splits were read (the lower, the earlier); it can be filled while adding.
+	private int[] splitRanks;
+
+	public PredicateIndexBuilder() {
+		this(null);
+	}
+
+	public PredicateIndexBuilder(int[] splitRanks) {
+		super();
+		this.splitRanks = splitRanks;
+	}
+
+	public void add(int s, int o) {
+		add(s, o, 0);
+	}
+
+	public void add(int s, int o, int split) {
+		if (split < 0 || split >= PredicateIndex.SPLITS)
+			throw new RuntimeException("Split " + split + " does not exist!");
+
+		pairs.add(PairSet.pack(s, o, split) ^ Long.MIN_VALUE);
+	}
+
+	public PredicateIndex build() {
+		long[] sorted = pairs.toArray();
+		Arrays.parallelSort(sorted);
+
+		// We do not want repeated pairs; if a pair is in several splits, we keep the one of the split that was read
+		// first, or the smallest split if we do not know.
+		int distinct = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] ^= Long.MIN_VALUE;
+
+			if (distinct == 0
+					|| (sorted[distinct - 1] & ~PairSet.SPLIT_MASK) != (sorted[i] & ~PairSet.SPLIT_MASK))
+				sorted[distinct++] = sorted[i];
+			else if (splitRanks != null && splitRanks[split(sorted[i])] < splitRanks[split(sorted[distinct - 1])])
+				sorted[distinct - 1] = sorted[i];
+		}
+
+		final int n = distinct;
+
+		pairs = null;
+
+		// The sides and the pair set only read the sorted pairs, so they are built at the same time.
+		ForkJoinTask<Side> subjectTask = ForkJoinTask.adapt(() -> buildSubjectSide(sorted, n)),
+				objectTask = ForkJoinTask.adapt(() -> buildObjectSide(sorted, n));
+		ForkJoinTask<PairSet> setTask = ForkJoinTask.adapt(() -> PairSet.of(sorted, n));
+		ForkJoinTask.invokeAll(subjectTask, objectTask, setTask);
+
+		Side subjects = subjectTask.join(), objects = objectTask.join();
+
+		return new PredicateIndex(subjects.keys, subjects.offsets, subjects.values, objects.keys, objects.offsets,
+				objects.values, setTask.join());
+	}
+
+	// Builds all the predicates in parallel in the common fork-join pool; each build also splits its own work, so a few
+	// large predicates do not leave the rest of the cores idle.
+	public static Map<String, PredicateIndex> buildAll(Map<String, PredicateIndexBuilder> builders) {
+		return buildAll(builders, IndexStorage.Heap);
+	}
+
+	// Each index is moved to the storage as soon as it is built, so there is a single index at a time on the heap per
+	// thread.
+	public static Map<String, PredicateIndex> buildAll(Map<String, PredicateIndexBuilder> builders,
+			IndexStorage storage) {
+		Map<String, PredicateIndex> ret = new ConcurrentHashMap<>();
+		builders.entrySet().parallelStream().forEach(e -> ret.put(e.getKey(), storage.store(e.getValue().build())));
+		return new HashMap<>(ret);
+	}
+
+	// Sorted distinct keys (subjects or objects), the offsets of each split, and the values of each key.
+	private static class Side {
+		MemorySegment keys, values;
+		MemorySegment[] offsets;
+
+		Side(int[] keys, int[][] offsets, int[] values) {
+			this.keys = MemorySegment.ofArray(keys);
+			this.offsets = segments(offsets);
+			this.values = MemorySegment.ofArray(values);
+		}
+	}
+
+	// The pairs are already sorted by subject and object.
+	private static Side buildSubjectSide(long[] sorted, int n) {
+		int subjectCount = 0;
+		for (int i = 0; i < n; i++)
+			if (i == 0 || subject(sorted[i - 1]) != subject(sorted[i]))
+				subjectCount++;
+
+		int[] subjects = new int[subjectCount], objectsBySubject = new int[n];
+		int[][] subjectOffsets = new int[PredicateIndex.SPLITS][subjectCount + 1];
+
+		// Count the objects of each subject and split.
+		int[] rows = new int[n], counts = new int[subjectCount * PredicateIndex.SPLITS];
+		for (int i = 0, row = -1; i < n; i++) {
+			if (row < 0 || subjects[row] != subject(sorted[i]))
+				subjects[++row] = subject(sorted[i]);
+
+			rows[i] = row;
+			counts[row * PredicateIndex.SPLITS + split(sorted[i])]++;
+		}
+
+		int[] next = new int[subjectCount * PredicateIndex.SPLITS];
+		for (int row = 0; row < subjectCount; row++)
+			setOffsets(counts, row, subjectOffsets, next);
+
+		// Within each row, objects go by split; they are still sorted within each split.
+		for (int i = 0; i < n; i++)
+			objectsBySubject[next[rows[i] * PredicateIndex.SPLITS + split(sorted[i])]++] = object(sorted[i]);
+
+		return new Side(subjects, subjectOffsets, objectsBySubject);
+	}
+
+	private static Side buildObjectSide(long[] sorted, int n) {
+		// Find the distinct objects.
+		int[] allObjects = new int[n];
+		for (int i = 0; i < n; i++)
+			allObjects[i] = object(sorted[i]);
+		Arrays.parallelSort(allObjects);
+
+		int objectCount = 0;
+		for (int i = 0; i < n; i++)
+			if (objectCount == 0 || allObjects[objectCount - 1] != allObjects[i])
+				allObjects[objectCount++] = allObjects[i];
+
+		int[] objects = Arrays.copyOf(allObjects, objectCount), subjectsByObject = new int[n];
+		int[][] objectOffsets = new int[PredicateIndex.SPLITS][objectCount + 1];
+
+		// Count the subjects of each object and split.
+		int[] rows = new int[n], counts = new int[objectCount * PredicateIndex.SPLITS];
+		for (int i = 0; i < n; i++) {
+			rows[i] = Arrays.binarySearch(objects, object(sorted[i]));
+			counts[rows[i] * PredicateIndex.SPLITS + split(sorted[i])]++;
+		}
+
+		int[] next = new int[objectCount * PredicateIndex.SPLITS];
+		for (int row = 0; row < objectCount; row++)
+			setOffsets(counts, row, objectOffsets, next);
+
+		// Visiting the pairs in subject order keeps the subjects of each object and split sorted.
+		for (int i = 0; i < n; i++)
+			subjectsByObject[next[rows[i] * PredicateIndex.SPLITS + split(sorted[i])]++] = subject(sorted[i]);
+
+		return new Side(objects, objectOffsets, subjectsByObject);
+	}
+
+	// The offsets of the row come from the previous row plus the pairs of splits <= t; next gets where each split
+	// starts within the row.
+	private static void setOffsets(int[] counts, int row, int[][] offsets, int[] next) {
+		int cumulative = 0;
+
+		for (int t = 0; t < PredicateIndex.SPLITS; t++) {
+			next[row * PredicateIndex.SPLITS + t] = offsets[PredicateIndex.ALL][row] + cumulative;
+			cumulative += counts[row * PredicateIndex.SPLITS + t];
+			offsets[t][row + 1] = offsets[t][row] + cumulative;
+		}
+	}
+
+	private static MemorySegment[] segments(int[][] columns) {
+		MemorySegment[] ret = new MemorySegment[columns.length];
+		for (int t = 0; t < columns.length; t++)
+			ret[t] = MemorySegment.ofArray(columns[t]);
+		return ret;
+	}
+
+	private static int subject(long pair) {
+		return (int) (pair >>> 33);
+	}
+
+	private static int object(long pair) {
+		return (int) (pair >>> 2) & Integer.MAX_VALUE;
+	}
+
+	private static int split(long pair) {
+		return (int) (pair & PairSet.SPLIT_MASK);
+	}
+
+}
@@ -0,0 +1,96 @@
+package edu.rit.goal.graph.index;
+
+import java.util.function.IntConsumer;
+
+import org.eclipse.collections.api.factory.primitive.LongIntMaps;
+import org.eclipse.collections.api.factory.primitive.LongSets;
+import org.eclipse.collections.api.map.primitive.MutableLongIntMap;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+
+// Pending changes of a single predicate. Indexes are immutable, so changes are buffered here and applied by building a
+// new index (compaction). A pair that is added takes the given split, even if it was already there with another one;
+// a pair that is removed is gone no matter its split.
+public class PredicateIndexDelta {
+	// Pairs are packed like in PairSet with split 0; added pairs map to their splits.
+	private MutableLongIntMap added = LongIntMaps.mutable.empty();
+	private MutableLongSet removed = LongSets.mutable.empty();
+
+	// Both return how many more changes there are.
+	public int add(int s, int o, int split) {
+		if (split < 0 || split >= PredicateIndex.SPLITS)
+			throw new RuntimeException("Split " + split + " does not exist!");
+
+		int before = size();
+
+		long key = PairSet.pack(s, o, 0);
+		removed.remove(key);
+		added.put(key, split);
+
+		return size() - before;
+	}
+
+	public int remove(int s, int o) {
+		int before = size();
+
+		long key = PairSet.pack(s, o, 0);
+		added.remove(key);
+		removed.add(key);
+
+		return size() - before;
+	}
+
+	public int size() {
+		return added.size() + removed.size();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	// The entities of the added pairs.
+	public void forEachAddedEntity(IntConsumer consumer) {
+		added.forEachKey(key -> {
+			consumer.accept(subject(key));
+			consumer.accept(object(key));
+		});
+	}
+
+	// A new index with the pairs of the given index (with all the splits; it can be null) and these changes.
+	public PredicateIndex apply(PredicateIndex index) {
+		PredicateIndexBuilder builder = new PredicateIndexBuilder();
+
+		if (index != null)
+			for (int row = 0; row < index.getSubjectCount(); row++) {
+				int s = index.getSubject(row), offset = index.subjectOffset(row), previous = 0;
+
+				// Pairs of split t come after the ones of smaller splits within the row.
+				for (int t = 0; t < PredicateIndex.SPLITS; t++) {
+					int current = PredicateIndex.get(index.subjectOffsets[t], row + 1)
+							- PredicateIndex.get(index.subjectOffsets[t], row);
+
+					for (int i = previous; i < current; i++) {
+						int o = index.objectBySubject(offset + i);
+						long key = PairSet.pack(s, o, 0);
+
+						if (!removed.contains(key) && !added.containsKey(key))
+							builder.add(s, o, t);
+					}
+
+					previous = current;
+				}
+			}
+
+		added.forEachKeyValue((key, split) -> builder.add(subject(key), object(key), split));
+
+		return builder.build();
+	}
+
+	private static int subject(long key) {
+		return (int) (key >>> 33);
+	}
+
+	private static int object(long key) {
+		return (int) (key >>> 2) & Integer.MAX_VALUE;
+	}
+
+}
@@ -0,0 +1,192 @@
+package edu.rit.goal.graph.index;
+
+import java.lang.foreign.MemorySegment;
+
+// Iterates in increasing order over a set of entities of a predicate index, and can seek to the first entity that is
+// not less than a given one; this is what leapfrog joins need. The set is the subjects (or objects) with pairs in the
+// view, or the objects of a subject (or the subjects of an object). Like PairCursor, it is reset by the accessors in
+// GraphDatabase, so a single instance can be reused without allocating.
+//
+// Rows are sorted by split and then by entity, so the row of a view is up to SPLITS sorted runs that are merged here.
+public class SortedCursor {
+	enum Mode {
+		Empty, Rows, Runs
+	}
+
+	private Mode mode = Mode.Empty;
+	private PredicateIndex index;
+
+	// Rows: the column of distinct entities and whether they are subjects.
+	private MemorySegment column;
+	private boolean subjects;
+	private int pos, to;
+
+	// Runs: the start, end and current position of each run in the column.
+	private int[] runFrom = new int[PredicateIndex.SPLITS], runTo = new int[PredicateIndex.SPLITS],
+			runPos = new int[PredicateIndex.SPLITS];
+	private int runs;
+
+	private int key;
+	private boolean atEnd;
+
+	public SortedCursor clear() {
+		mode = Mode.Empty;
+		index = null;
+		atEnd = true;
+		return this;
+	}
+
+	// The subjects with pairs in the view.
+	public SortedCursor subjects(PredicateIndex index) {
+		return rows(index, true);
+	}
+
+	// The objects with pairs in the view.
+	public SortedCursor objects(PredicateIndex index) {
+		return rows(index, false);
+	}
+
+	private SortedCursor rows(PredicateIndex index, boolean subjects) {
+		if (index == null)
+			return clear();
+
+		this.mode = Mode.Rows;
+		this.index = index;
+		this.subjects = subjects;
+		this.column = subjects ? index.subjects : index.objects;
+		this.pos = 0;
+		this.to = subjects ? index.getSubjectCount() : index.getObjectCount();
+
+		skipEmptyRows();
+		return this;
+	}
+
+	// The objects of the subject.
+	public SortedCursor objectsOf(PredicateIndex index, int s) {
+		int r = index == null ? -1 : index.getSubjectRow(s);
+
+		if (r < 0)
+			return clear();
+
+		return runs(index, index.objectsBySubject, index.subjectOffset(r), index.subjectOffsets, r);
+	}
+
+	// The subjects of the object.
+	public SortedCursor subjectsOf(PredicateIndex index, int o) {
+		int r = index == null ? -1 : index.getObjectRow(o);
+
+		if (r < 0)
+			return clear();
+
+		return runs(index, index.subjectsByObject, index.objectOffset(r), index.objectOffsets, r);
+	}
+
+	private SortedCursor runs(PredicateIndex index, MemorySegment column, int start, MemorySegment[] offsets, int r) {
+		this.mode = Mode.Runs;
+		this.index = index;
+		this.column = column;
+
+		// The pairs of split t are after the ones of smaller splits.
+		int previous = 0;
+		runs = 0;
+		for (int t = 0; t <= index.split; t++) {
+			int current = PredicateIndex.get(offsets[t], r + 1) - PredicateIndex.get(offsets[t], r);
+
+			if (current > previous) {
+				runFrom[runs] = runPos[runs] = start + previous;
+				runTo[runs] = start + current;
+				runs++;
+			}
+
+			previous = current;
+		}
+
+		updateKey();
+		return this;
+	}
+
+	public boolean atEnd() {
+		return atEnd;
+	}
+
+	public int key() {
+		return key;
+	}
+
+	public void next() {
+		switch (mode) {
+		case Rows -> {
+			pos++;
+			skipEmptyRows();
+		}
+		case Runs -> {
+			// Entities are distinct across runs (pairs are unique), so a single run is at the key.
+			for (int i = 0; i < runs; i++)
+				if (runPos[i] < runTo[i] && PredicateIndex.get(column, runPos[i]) == key) {
+					runPos[i]++;
+					break;
+				}
+
+			updateKey();
+		}
+		default -> atEnd = true;
+		}
+	}
+
+	// Moves to the first entity that is not less than k; it never moves back.
+	public void seek(int k) {
+		if (atEnd || key >= k)
+			return;
+
+		switch (mode) {
+		case Rows -> {
+			pos = lowerBound(column, pos, to, k);
+			skipEmptyRows();
+		}
+		case Runs -> {
+			for (int i = 0; i < runs; i++)
+				runPos[i] = lowerBound(column, runPos[i], runTo[i], k);
+
+			updateKey();
+		}
+		default -> atEnd = true;
+		}
+	}
+
+	// Rows can be empty in a view.
+	private void skipEmptyRows() {
+		while (pos < to && (subjects ? index.getSubjectRowDegree(pos) : index.getObjectRowDegree(pos)) == 0)
+			pos++;
+
+		atEnd = pos >= to;
+		if (!atEnd)
+			key = PredicateIndex.get(column, pos);
+	}
+
+	private void updateKey() {
+		atEnd = true;
+		for (int i = 0; i < runs; i++)
+			if (runPos[i] < runTo[i]) {
+				int value = PredicateIndex.get(column, runPos[i]);
+
+				if (atEnd || value < key)
+					key = value;
+				atEnd = false;
+			}
+	}
+
+	// First position in [from, to) whose value is not less than k. We gallop first: seeks are usually short.
+	private static int lowerBound(MemorySegment column, int from, int to, int k) {
+		int step = 1, lo = from, hi = from;
+
+		while (hi < to && PredicateIndex.get(column, hi) < k) {
+			lo = hi + 1;
+			hi += step;
+			step <<= 1;
+		}
+
+		int ret = PredicateIndex.binarySearch(column, lo, Math.min(hi, to), k);
+		return ret < 0 ? -(ret + 1) : ret;
+	}
+
+}
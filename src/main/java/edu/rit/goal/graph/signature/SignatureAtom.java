@@ -1,8 +1,7 @@
 package edu.rit.goal.graph.signature;
 
 public class SignatureAtom implements Comparable<SignatureAtom> {
-	public int s, o;
-	public String p;
+	public int s, o, p;
 
 	@Override
 	public int compareTo(SignatureAtom o) {
@@ -12,11 +11,26 @@ public class SignatureAtom implements Comparable<SignatureAtom> {
 			ret = Integer.compare(this.o, o.o);
 
 		if (ret == 0)
-			ret = this.p.compareTo(o.p);
+			ret = Integer.compare(this.p, o.p);
 
 		return ret;
 	}
 
+	@Override
+	public int hashCode() {
+		return (s * 31 + o) * 31 + p;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof SignatureAtom))
+			return false;
+		SignatureAtom other = (SignatureAtom) obj;
+		return s == other.s && o == other.o && p == other.p;
+	}
+
 	@Override
 	public String toString() {
 		return "[" + s + "," + o + "," + p + "]";
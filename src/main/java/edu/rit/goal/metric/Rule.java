@@ -43,7 +43,7 @@ public class Rule {
 	}
 	
 	public int getUniqueBodyPredicates() {
-		Set<String> preds = new HashSet<>();
+		Set<Integer> preds = new HashSet<>();
 		
 		for (LabeledEdge e : rule.edgeSet())
 			if (e != head)
@@ -0,0 +1,76 @@
+package edu.rit.goal.metric;
+
+import java.math.BigInteger;
+
+import org.eclipse.collections.api.factory.primitive.LongLongMaps;
+import org.eclipse.collections.api.map.primitive.LongLongMap;
+import org.eclipse.collections.api.map.primitive.MutableLongLongMap;
+
+// Support plus how many body matchings the head pairs have, in total and per pair. Counts per pair stay at
+// Long.MAX_VALUE; if some got there, the metric is truncated and they are lower bounds.
+public class RuleMatchCount extends RuleSupport {
+	public BigInteger matchings;
+
+	// Only the pairs with some matching; the keys are the subject and the object (see getKey).
+	MutableLongLongMap counts = LongLongMaps.mutable.empty();
+
+	// The counts are upper bounds of the matchings (see MatchCountVisitor.isExact); the support is still exact.
+	boolean upperBounds;
+
+	public RuleMatchCount(int predicateSize) {
+		super(predicateSize);
+		this.matchings = BigInteger.ZERO;
+	}
+
+	public void addCount(int s, int o, long count) {
+		if (count == 0)
+			return;
+
+		long key = getKey(s, o), current = counts.get(key);
+		counts.put(key, count > Long.MAX_VALUE - current ? Long.MAX_VALUE : current + count);
+		matchings = matchings.add(BigInteger.valueOf(count));
+	}
+
+	public long getCount(int s, int o) {
+		return counts.get(getKey(s, o));
+	}
+
+	public boolean isUpperBounds() {
+		return upperBounds;
+	}
+
+	public void setUpperBounds(boolean upperBounds) {
+		this.upperBounds = upperBounds;
+	}
+
+	public LongLongMap getCounts() {
+		return counts.asUnmodifiable();
+	}
+
+	public static long getKey(int s, int o) {
+		return (long) s << 32 | (o & 0xFFFFFFFFL);
+	}
+
+	public static int getSubject(long key) {
+		return (int) (key >>> 32);
+	}
+
+	public static int getObject(long key) {
+		return (int) key;
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + "; matchings: " + (upperBounds ? "at most " : "") + matchings + "; pairs: "
+				+ counts.size();
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+
+		this.matchings = BigInteger.ZERO;
+		counts.clear();
+		upperBounds = false;
+	}
+}
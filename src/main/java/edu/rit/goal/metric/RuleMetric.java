@@ -8,6 +8,9 @@ public abstract class RuleMetric {
 	// There are many options so a POJO is very cumbersome.
 	private Map<String, Object> extraStuff = new HashMap<>();
 	
+	// The visit ran out of budget, so this is what it had by then.
+	private boolean truncated;
+	
 	public void addExtraStuff(Map<String, Object> extra) {
 		extraStuff.putAll(extra);
 	}
@@ -16,8 +19,17 @@ public abstract class RuleMetric {
 		return extraStuff;
 	}
 	
+	public boolean isTruncated() {
+		return truncated;
+	}
+	
+	public void setTruncated(boolean truncated) {
+		this.truncated = truncated;
+	}
+	
 	public void reset() {
 		extraStuff.clear();
+		truncated = false;
 	}
 	
 }
@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -28,24 +29,47 @@ import edu.rit.goal.graph.GraphDatabase;
 import edu.rit.goal.graph.LabeledEdge;
 import edu.rit.goal.graph.LanguageBias;
 import edu.rit.goal.graph.LatticeGraph;
+import edu.rit.goal.graph.index.IndexStorage;
 import edu.rit.goal.graph.signature.GraphSignature;
 import edu.rit.goal.graph.signature.GraphSignature.SignatureResult;
 import edu.rit.goal.metric.Rule;
 import edu.rit.goal.metric.RulePCAConfidence;
+import edu.rit.goal.metric.RuleMatchCount;
 import edu.rit.goal.metric.RuleSupport;
 import edu.rit.goal.visitor.EstimatedRuleMetricListener;
 import edu.rit.goal.visitor.ExactRuleMetricListener;
 import edu.rit.goal.visitor.GraphVisitor;
+import edu.rit.goal.visitor.MatchBudget;
+import edu.rit.goal.visitor.Matcher;
+import edu.rit.goal.visitor.Matcher.Engine;
 import edu.rit.goal.visitor.RuleMetricFactory;
 import edu.rit.goal.visitor.RuleMetricListener;
 import edu.rit.goal.visitor.confidence.EstimatedPCAConfidenceVisitor.SampleSelection;
 import edu.rit.goal.visitor.confidence.PCAConfidenceVisitor;
+import edu.rit.goal.visitor.support.ChainSupportVisitor;
 import edu.rit.goal.visitor.support.ExactSupportVisitor;
+import edu.rit.goal.visitor.support.MatchCountVisitor;
 
 public class AMIE {
 	// Hyperparameters.
 	public int maxRuleLength = 3;
 	public double minHeadCoverage = 0.1;
+	// How matchings are found when computing metrics.
+	public Engine engine = Engine.Backtracking;
+	// Whether the exact support of a rule is split across the common pool; otherwise, a rule takes a single worker.
+	public boolean parallelSupport = false;
+	// Whether the support of chain rules is computed set at a time; their calls are then the pairs gone over.
+	public boolean chainSupport = false;
+	// Whether the support of tree rules also counts the body matchings of each head pair, if the counts are exact (see
+	// MatchCountVisitor.isExact); they are logged per rule.
+	public boolean matchCount = false;
+	// Keys of the memo of existence searches of each visitor; zero for no memo.
+	public int memoCapacity = Matcher.MEMO_CAPACITY;
+	// Whether the matcher picks the plan of each search with the degrees of the grounded values.
+	public boolean adaptiveOrder = false;
+	// Matching calls and CPU time (ns) of each metric of a rule, so that a single rule does not stall a worker; zero
+	// for no limit. Truncated metrics are lower bounds.
+	public long maxMatchingCalls = 0, maxMatchingTime = 0;
 
 	private static AMIE instance;
 
@@ -76,7 +100,7 @@ public class AMIE {
 		return g.edgeSet().stream().filter(e -> e.pid == 0).findFirst().get();
 	}
 
-	public void grow(LatticeGraph lattice, DirectedMultigraph<Integer, LabeledEdge> rule, int u, int v, String p) {
+	public void grow(LatticeGraph lattice, DirectedMultigraph<Integer, LabeledEdge> rule, int u, int v, int p) {
 		// The predicate was not there. Add it!
 		DirectedMultigraph<Integer, LabeledEdge> grown = LanguageBias.cloneSubgraph(rule);
 
@@ -121,8 +145,6 @@ public class AMIE {
 				.setConfig(GraphDatabaseSettings.preallocate_logical_logs, false).build();
 		registerShutdownHook(latticeService);
 
-		LatticeGraph lattice = new LatticeGraph(latticeService.database(GraphDatabaseSettings.DEFAULT_DATABASE_NAME));
-
 		// Read only!
 		DatabaseManagementService dbService = new DatabaseManagementServiceBuilder(Path.of(dbFolder))
 				.setConfig(GraphDatabaseSettings.keep_logical_logs, "false")
@@ -131,18 +153,25 @@ public class AMIE {
 				.build();
 		registerShutdownHook(dbService);
 
-		GraphDatabase db = new GraphDatabase(dbService.database(GraphDatabaseSettings.DEFAULT_DATABASE_NAME), null);
+		// Workers run for a long time, so the indexes are kept off-heap.
+		GraphDatabase db = new GraphDatabase(dbService.database(GraphDatabaseSettings.DEFAULT_DATABASE_NAME), null,
+				GraphDatabase.getSnapshotFile(dbFolder), IndexStorage.OffHeap);
+
+		System.out.println(new Date() + " -- Load times (ms): " + db.getLoadTimes());
+
+		LatticeGraph lattice = new LatticeGraph(latticeService.database(GraphDatabaseSettings.DEFAULT_DATABASE_NAME),
+				db.getDictionary());
 
 		if (lattice.isEmpty()) {
 			System.out.println(new Date() + " -- Initializing: creating L2...");
 
 			// Let's create Level 2.
-			for (String p1 : db.getPredicates())
-				for (String p2 : db.getPredicates()) {
+			for (int p1 : db.getPredicates())
+				for (int p2 : db.getPredicates()) {
 					List<DirectedMultigraph<Integer, LabeledEdge>> graphsToAdd = new ArrayList<>();
 
 					// Avoid isomorphs.
-					if (p1.compareTo(p2) > 0) {
+					if (p1 > p2) {
 						DirectedMultigraph<Integer, LabeledEdge> g = new DirectedMultigraph<>(LabeledEdge.class);
 
 						g.addVertex(0);
@@ -154,7 +183,7 @@ public class AMIE {
 					}
 
 					// Avoid isomorphs.
-					if (p1.compareTo(p2) >= 0) {
+					if (p1 >= p2) {
 						DirectedMultigraph<Integer, LabeledEdge> g = new DirectedMultigraph<>(LabeledEdge.class);
 
 						g.addVertex(0);
@@ -166,7 +195,7 @@ public class AMIE {
 					}
 
 					// Avoid isomorphs.
-					if (p1.compareTo(p2) >= 0) {
+					if (p1 >= p2) {
 						DirectedMultigraph<Integer, LabeledEdge> g = new DirectedMultigraph<>(LabeledEdge.class);
 
 						g.addVertex(0);
@@ -179,7 +208,7 @@ public class AMIE {
 					}
 
 					// Avoid isomorphs.
-					if (p1.compareTo(p2) >= 0) {
+					if (p1 >= p2) {
 						DirectedMultigraph<Integer, LabeledEdge> g = new DirectedMultigraph<>(LabeledEdge.class);
 
 						g.addVertex(0);
@@ -192,7 +221,7 @@ public class AMIE {
 					}
 
 					// Avoid isomorphs.
-					if (p1.compareTo(p2) >= 0) {
+					if (p1 >= p2) {
 						DirectedMultigraph<Integer, LabeledEdge> g = new DirectedMultigraph<>(LabeledEdge.class);
 
 						g.addVertex(0);
@@ -258,16 +287,35 @@ public class AMIE {
 									new Date() + " -- Worker: " + workerId + " computing metrics for rule " + next);
 
 							GraphVisitor queryVisitor = new GraphVisitor(db, rule, head, split);
-
-							ExactSupportVisitor exactSupportVisitor = RuleMetricFactory.getExactSupport(queryVisitor);
-
-							RuleMetricListener exactSupportListener = new ExactRuleMetricListener(
-									new RuleSupport(queryVisitor.getHeadSize()));
-							exactSupportVisitor.compute(List.of(exactSupportListener));
+							queryVisitor.setEngine(engine);
+							queryVisitor.setMemoCapacity(memoCapacity);
+							queryVisitor.setAdaptiveOrder(adaptiveOrder);
+
+							boolean countMatches = matchCount && MatchCountVisitor.isExact(queryVisitor);
+
+							RuleMetricListener exactSupportListener = new ExactRuleMetricListener(countMatches
+									? new RuleMatchCount(queryVisitor.getHeadSize())
+									: new RuleSupport(queryVisitor.getHeadSize()));
+
+							// If two atoms cannot be joined, the support is zero and there is nothing to match.
+							if (!db.getView(split).getStatistics().hasNoMatches(rule)) {
+								ExactSupportVisitor exactSupportVisitor = countMatches
+										? RuleMetricFactory.getMatchCount(queryVisitor)
+										: chainSupport && ChainSupportVisitor.isChain(queryVisitor)
+												? RuleMetricFactory.getChainSupport(queryVisitor)
+												: RuleMetricFactory.getExactSupport(queryVisitor,
+														parallelSupport ? ForkJoinPool.commonPool() : null);
+								exactSupportVisitor.setBudget(MatchBudget.of(maxMatchingCalls, maxMatchingTime));
+								exactSupportVisitor.compute(List.of(exactSupportListener));
+							}
 
 							queryVisitor = null;
 
 							RuleSupport support = (RuleSupport) exactSupportListener.getMetric();
+							if (countMatches)
+								System.out.println(new Date() + " -- Worker: " + workerId + " matchings of rule " + next
+										+ ": " + support + (support.isTruncated() ? " (truncated)" : ""));
+
 							List<RulePCAConfidence> confidenceMeasures = new ArrayList<>();
 							// This helps us determine whether we computed the confidence using CLT.
 							Map<RulePCAConfidence, String> confType = new HashMap<>();
@@ -280,11 +328,14 @@ public class AMIE {
 									for (int corrupt : List.of(x, y)) {
 										GraphVisitor pcaQueryVisitor = GraphVisitor.getPCAConfVisitor(db, rule, head,
 												corrupt, split);
+										pcaQueryVisitor.setEngine(engine);
+										pcaQueryVisitor.setMemoCapacity(memoCapacity);
+										pcaQueryVisitor.setAdaptiveOrder(adaptiveOrder);
 
 										BigInteger total = BigInteger
-												.valueOf(pcaQueryVisitor.getVariableCandidates(x).size())
+												.valueOf(pcaQueryVisitor.getCandidates(x).size())
 												.multiply(BigInteger
-														.valueOf(pcaQueryVisitor.getVariableCandidates(y).size()));
+														.valueOf(pcaQueryVisitor.getCandidates(y).size()));
 
 										// We will use Binomial+CLT with accuracy=0.001 and confidence=0.0001.
 										BinomialEstimator binEstimator = new BinomialEstimator(new EstimatorMemento(),
@@ -314,8 +365,12 @@ public class AMIE {
 											confType.put(conf, "exact");
 										}
 
+										exactPCAVisitor.setBudget(MatchBudget.of(maxMatchingCalls, maxMatchingTime));
 										exactPCAVisitor.compute(List.of(exactPCAListener));
 
+										if (conf.isTruncated())
+											confType.put(conf, "truncated");
+
 										pcaQueryVisitor = null;
 									}
 								}
@@ -351,10 +406,10 @@ public class AMIE {
 								for (int v : rule.vertexSet())
 									// No self loops!
 									if (u != v) {
-										Set<String> uvPredicates = rule.getAllEdges(u, v).stream().map(e -> e.predicate)
+										Set<Integer> uvPredicates = rule.getAllEdges(u, v).stream().map(e -> e.predicate)
 												.collect(Collectors.toSet());
 
-										for (String p : db.getPredicates())
+										for (int p : db.getPredicates())
 											if (!uvPredicates.contains(p))
 												grow(lattice, rule, u, v, p);
 									}
@@ -363,7 +418,7 @@ public class AMIE {
 							int v = rule.vertexSet().size();
 
 							for (int u : rule.vertexSet())
-								for (String p : db.getPredicates())
+								for (int p : db.getPredicates())
 									// Incoming and outgoing.
 									for (Entry<Integer, Integer> entry : Map.of(u, v, v, u).entrySet())
 										grow(lattice, rule, entry.getKey(), entry.getValue(), p);
@@ -126,7 +126,7 @@ public abstract class Policy {
 		}
 	}
 
-	public void addPredicateSizesToReward(Map<String, Integer> predicateSizes) {
+	public void addPredicateSizesToReward(Map<Integer, Integer> predicateSizes) {
 		for (Reward r : profileRewards.values()) {
 			RuleMetricsReward rr = (RuleMetricsReward) r;
 			rr.addPredicateSize(predicateSizes);
@@ -43,9 +43,9 @@ public class RuleMetricsReward extends Reward {
 		features.add(Feature.Confidence);
 	}
 
-	Map<String, Integer> predicateSizes;
+	Map<Integer, Integer> predicateSizes;
 
-	public void addPredicateSize(Map<String, Integer> predicateSizes) {
+	public void addPredicateSize(Map<Integer, Integer> predicateSizes) {
 		features.add(Feature.PredicateSize);
 		this.predicateSizes = predicateSizes;
 	}
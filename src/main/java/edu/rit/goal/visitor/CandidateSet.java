@@ -0,0 +1,122 @@
+package edu.rit.goal.visitor;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+import org.eclipse.collections.api.factory.primitive.IntLists;
+import org.eclipse.collections.api.factory.primitive.IntSets;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
+
+// Entities that can be the value of a variable. Sets are sorted arrays when they are small for their range (e.g., the
+// neighbors of an entity) and bitmaps when they are dense (e.g., the subjects of a large predicate), whichever takes
+// less memory, and intersections go over the smallest side. Sets never change once built, so they can be cached and
+// shared by visitors.
+public class CandidateSet {
+	public static final CandidateSet EMPTY = new CandidateSet(new int[0], null, 0);
+
+	// A bitmap takes (largest entity / 8) bytes and an array takes 4 bytes per entity.
+	private static final int DENSITY = 32;
+
+	// Sorted entities, or null if it is a bitmap.
+	private final int[] sorted;
+	private final BitSet bits;
+	private final int size;
+
+	private CandidateSet(int[] sorted, BitSet bits, int size) {
+		super();
+		this.sorted = sorted;
+		this.bits = bits;
+		this.size = size;
+	}
+
+	// The first n entities of the array, which must be sorted and distinct; the array may be kept.
+	public static CandidateSet of(int[] entities, int n) {
+		if (n == 0)
+			return EMPTY;
+
+		if (entities[n - 1] < (long) DENSITY * n) {
+			BitSet bits = new BitSet(entities[n - 1] + 1);
+			for (int i = 0; i < n; i++)
+				bits.set(entities[i]);
+			return new CandidateSet(null, bits, n);
+		}
+
+		return new CandidateSet(n == entities.length ? entities : Arrays.copyOf(entities, n), null, n);
+	}
+
+	// The bitmap may be kept.
+	public static CandidateSet of(BitSet bits) {
+		int n = bits.cardinality();
+
+		if (n == 0)
+			return EMPTY;
+
+		if (bits.length() < (long) DENSITY * n)
+			return new CandidateSet(null, bits, n);
+
+		return new CandidateSet(bits.stream().toArray(), null, n);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int entity) {
+		if (sorted != null)
+			return Arrays.binarySearch(sorted, entity) >= 0;
+		return entity >= 0 && bits.get(entity);
+	}
+
+	public CandidateSet intersect(CandidateSet other) {
+		if (isEmpty() || other.isEmpty())
+			return EMPTY;
+
+		if (sorted == null && other.sorted == null) {
+			BitSet ret = (BitSet) bits.clone();
+			ret.and(other.bits);
+			return of(ret);
+		}
+
+		// Go over the array (the smallest one if both are arrays) and look up in the other.
+		if (sorted == null || (other.sorted != null && other.size < size))
+			return other.select(this::contains);
+
+		return select(other::contains);
+	}
+
+	public CandidateSet select(IntPredicate predicate) {
+		int[] ret = new int[size];
+		int n = 0;
+
+		if (sorted != null) {
+			for (int entity : sorted)
+				if (predicate.test(entity))
+					ret[n++] = entity;
+		} else
+			for (int entity = bits.nextSetBit(0); entity >= 0; entity = bits.nextSetBit(entity + 1))
+				if (predicate.test(entity))
+					ret[n++] = entity;
+
+		return n == size ? this : of(ret, n);
+	}
+
+	// Entities in increasing order.
+	public int[] toArray() {
+		return sorted != null ? sorted.clone() : bits.stream().toArray();
+	}
+
+	public MutableIntList toList() {
+		return IntLists.mutable.with(toArray());
+	}
+
+	public MutableIntSet toSet() {
+		return IntSets.mutable.with(toArray());
+	}
+
+}
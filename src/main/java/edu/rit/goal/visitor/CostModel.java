@@ -0,0 +1,153 @@
+package edu.rit.goal.visitor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.rit.goal.graph.GraphDatabase;
+import edu.rit.goal.graph.GraphStatistics;
+import edu.rit.goal.graph.GraphStatistics.PredicateStatistics;
+import edu.rit.goal.graph.index.PairCursor;
+
+// Estimates how many partial matchings the matcher goes through with a plan, which is about the number of calls. Each
+// edge multiplies the partial matchings by its fan-out: the pairs of a scan, the degree of the entity in a lookup, or
+// the chance of the pair in a probe. Entities that come from an edge are not average ones (hubs are in many pairs), so
+// the degrees of lookups are sampled from the pairs of the edge that bound the entity. When the values of the grounded
+// variables are known, their degrees are exact, and this is what lets the matcher pick a plan per head pair. It counts
+// all the matchings, so searches that stop at the first one take less than estimated.
+public class CostModel {
+	// Pairs sampled per edge to estimate degrees.
+	static final int SAMPLE_SIZE = 64;
+
+	// Where an entity comes from: the predicate and position of an edge (see getFrom), or nowhere in particular.
+	public static final int NONE = -1;
+
+	GraphDatabase db;
+	GraphStatistics statistics;
+
+	// Sampled average degree and fraction of entities with some pair; the key is what is looked up (high bits) and where
+	// the entities come from (low bits). They are shared by the visitors of the same view.
+	Map<Long, double[]> samples;
+
+	public CostModel(GraphDatabase db) {
+		this(db, new ConcurrentHashMap<>());
+	}
+
+	CostModel(GraphDatabase db, Map<Long, double[]> samples) {
+		super();
+		this.db = db;
+		this.statistics = db.getStatistics();
+		this.samples = samples;
+	}
+
+	public static int getFrom(int p, boolean subject) {
+		return p * 2 + (subject ? 0 : 1);
+	}
+
+	// Estimated pairs of the edge per partial matching; the ends get values from the given edges.
+	public double getFanOut(int p, QueryPlan.Access access, int sourceFrom, int targetFrom) {
+		PredicateStatistics stats = statistics.getPredicate(p);
+
+		if (stats == null)
+			return 0;
+
+		return switch (access) {
+		case Scan -> stats.getSize();
+		case SubjectLookup -> getDegree(p, true, sourceFrom);
+		case ObjectLookup -> getDegree(p, false, targetFrom);
+		// The objects of the subject, out of all the objects, if the object is an object at all.
+		case PairProbe ->
+			Math.min(1, getDegree(p, true, sourceFrom) * getPresence(p, false, targetFrom) / stats.getObjects());
+		};
+	}
+
+	// Estimated partial matchings of the plan. With values, the degrees of the grounded variables are exact.
+	public double estimate(QueryPlan plan, int[] values) {
+		double rows = 1, cost = 0;
+
+		for (int i = 0; i < plan.size() && rows > 0; i++) {
+			int p = plan.predicates[i], s = plan.sources[i], o = plan.targets[i];
+			double fanOut = plan.fanOuts[i];
+
+			if (values != null)
+				switch (plan.access[i]) {
+				case SubjectLookup -> {
+					if (plan.isGrounded(s))
+						fanOut = db.getSubjectDegree(p, values[s]);
+				}
+				case ObjectLookup -> {
+					if (plan.isGrounded(o))
+						fanOut = db.getObjectDegree(p, values[o]);
+				}
+				case PairProbe -> {
+					if (plan.isGrounded(s) && plan.isGrounded(o))
+						fanOut = db.hasTriple(p, values[s], values[o]) ? 1 : 0;
+				}
+				default -> {
+					// Nothing is known about scans.
+				}
+				}
+
+			rows *= fanOut;
+			cost += rows;
+		}
+
+		return cost;
+	}
+
+	private double getDegree(int p, boolean subject, int from) {
+		if (from == NONE) {
+			PredicateStatistics stats = statistics.getPredicate(p);
+			return subject ? stats.getAverageSubjectDegree() : stats.getAverageObjectDegree();
+		}
+
+		return getSample(p, subject, from)[0];
+	}
+
+	private double getPresence(int p, boolean subject, int from) {
+		if (from == NONE) {
+			PredicateStatistics stats = statistics.getPredicate(p);
+			return (double) (subject ? stats.getSubjects() : stats.getObjects()) / statistics.getNumberOfEntities();
+		}
+
+		return getSample(p, subject, from)[1];
+	}
+
+	private double[] getSample(int p, boolean subject, int from) {
+		long key = (long) getFrom(p, subject) << 32 | from;
+
+		double[] ret = samples.get(key);
+		if (ret == null) {
+			// Two threads may sample the same thing, but that is harmless.
+			ret = sample(p, subject, from);
+			samples.putIfAbsent(key, ret);
+		}
+		return ret;
+	}
+
+	// Pairs are spread evenly, so entities in many pairs are sampled more often, just like in partial matchings; it
+	// is the same every time.
+	private double[] sample(int p, boolean subject, int from) {
+		int q = from / 2;
+		boolean fromSubject = from % 2 == 0;
+
+		PairCursor pairs = db.getCandidates(q, new PairCursor());
+		int n = Math.min(SAMPLE_SIZE, pairs.size());
+
+		if (n == 0)
+			return new double[] { 0, 0 };
+
+		double degree = 0, present = 0;
+		for (int i = 0; i < n; i++) {
+			int j = (int) ((long) i * pairs.size() / n);
+			int e = fromSubject ? pairs.getSubject(j) : pairs.getObject(j);
+
+			int d = subject ? db.getSubjectDegree(p, e) : db.getObjectDegree(p, e);
+			degree += d;
+			if (d > 0)
+				present++;
+		}
+
+		return new double[] { degree / n, present / n };
+	}
+
+}
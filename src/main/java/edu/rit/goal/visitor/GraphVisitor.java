@@ -1,220 +1,421 @@
 package edu.rit.goal.visitor;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BiFunction;
-import java.util.function.Consumer;
-import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.collections4.SetUtils;
-import org.eclipse.collections.api.factory.Lists;
-import org.eclipse.collections.api.factory.Sets;
 import org.eclipse.collections.api.factory.primitive.IntSets;
-import org.eclipse.collections.api.list.MutableList;
-import org.eclipse.collections.api.set.MutableSet;
+import org.eclipse.collections.api.factory.primitive.LongIntMaps;
+import org.eclipse.collections.api.map.primitive.MutableLongIntMap;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
 import org.jgrapht.graph.DirectedMultigraph;
 
 import edu.rit.goal.graph.GraphDatabase;
 import edu.rit.goal.graph.LabeledEdge;
 import edu.rit.goal.graph.LanguageBias;
+import edu.rit.goal.graph.index.PairCursor;
+import edu.rit.goal.graph.index.PredicateIndex;
+import edu.rit.goal.graph.signature.GraphSignature;
+import edu.rit.goal.graph.signature.GraphSignature.SignatureResult;
+import edu.rit.goal.graph.signature.SignatureAtom;
 
 public class GraphVisitor {
 
-	@SuppressWarnings("unchecked")
-	public MutableList<Entry<Integer, Integer>> toIterate(LabeledEdge e, Map<Integer, Integer> pm) {
-		MutableList<Entry<Integer, Integer>> ret = Lists.mutable.empty();
+	public PairCursor toIterate(LabeledEdge e, Map<Integer, Integer> pm, PairCursor cursor) {
+		Integer s = pm.get(query.getEdgeSource(e)), o = pm.get(query.getEdgeTarget(e));
 
-		int u = query.getEdgeSource(e), up = query.getEdgeTarget(e);
-		String p = e.predicate;
+		return toIterate(e.predicate, s == null ? Matcher.UNBOUND : s, o == null ? Matcher.UNBOUND : o, cursor);
+	}
 
-		if (!pm.containsKey(u) && !pm.containsKey(up))
-			ret = db.getCandidatesAsList(p);
-		else if (pm.containsKey(u) && !pm.containsKey(up)) {
-			MutableList<Entry<Integer, Integer>> list = db.getCandidatesBySubjectAsList(p, pm.get(u));
+	// Same as above with the values of the source and target (or unbound).
+	public PairCursor toIterate(int p, int s, int o, PairCursor cursor) {
+		return toIterate(QueryPlan.getAccess(s != Matcher.UNBOUND, o != Matcher.UNBOUND), p, s, o, cursor);
+	}
 
-			if (list != null)
-				ret = list;
-		} else if (!pm.containsKey(u) && pm.containsKey(up)) {
-			MutableList<Entry<Integer, Integer>> list = db.getCandidatesByObjectAsList(p, pm.get(up));
+	// Candidates of the predicate using the access path.
+	public PairCursor toIterate(QueryPlan.Access access, int p, int s, int o, PairCursor cursor) {
+		return switch (access) {
+		case Scan -> db.getCandidates(p, cursor);
+		case SubjectLookup -> db.getCandidatesBySubject(p, s, cursor);
+		case ObjectLookup -> db.getCandidatesByObject(p, o, cursor);
+		case PairProbe -> db.hasTriple(p, s, o) ? cursor.single(s, o) : cursor.clear();
+		};
+	}
 
-			if (list != null)
-				ret = list;
-		} else {
-			Entry<Integer, Integer> pair = Map.entry(pm.get(u), pm.get(up));
+	// The sizes of the edges in the best order (greedily), which are the factors of the probability; the exact product
+	// is only built on demand (see EstimatorMemento).
+	public int[] getProbabilityCosts(Map<Integer, Integer> matching, Set<Integer> assuming) {
+		if (probabilityEdges == null)
+			initProbability();
 
-			MutableSet<Entry<Integer, Integer>> subjectPairs = db.getCandidatesBySubjectAsSet(p, pm.get(u)),
-					objectPairs = db.getCandidatesByObjectAsSet(p, pm.get(up));
+		int m = probabilityEdges.length;
+		boolean[] bound = new boolean[probabilityVertices.length], pending = new boolean[m];
+		int[] values = new int[probabilityVertices.length], costs = new int[m];
+		PairCursor cursor = new PairCursor();
 
-			if (subjectPairs != null && subjectPairs.contains(pair) && objectPairs != null
-					&& objectPairs.contains(pair))
-				ret = Lists.mutable.of(pair);
-		}
+		for (int v = 0; v < probabilityVertices.length; v++)
+			values[v] = matching.get(probabilityVertices[v]);
+		Arrays.fill(pending, true);
 
-		return ret;
-	}
-
-	// This computes the best probability (greedily).
-	public BigDecimal getProbability(Map<Integer, Integer> matching, Set<Integer> assuming) {
 		// Choose next edge greedily.
-		List<BigDecimal> probabilities = new ArrayList<>();
-		Set<LabeledEdge> pending = new HashSet<>(query.edgeSet());
-		List<LabeledEdge> selected = new ArrayList<>();
-
-		// Precompute local edge sizes.
-		Map<LabeledEdge, Integer> localEdgeSizes = new HashMap<>();
-		for (LabeledEdge e : pending) {
-			int src = query.getEdgeSource(e), tgt = query.getEdgeTarget(e);
-			
-			if (assuming.contains(src) && assuming.contains(tgt))
-				localEdgeSizes.put(e, 1);
-			else if (assuming.contains(src) && !assuming.contains(tgt))
-				localEdgeSizes.put(e, db.getCandidatesBySubjectAsSet(e.predicate, matching.get(src)).size());
-			else if (!assuming.contains(src) && assuming.contains(tgt))
-				localEdgeSizes.put(e, db.getCandidatesByObjectAsSet(e.predicate, matching.get(tgt)).size());
-			else {
-				// First: take the edge size
-				AtomicInteger x = new AtomicInteger(edgeSizes.get(e));
-
-				// Second: get source.
-				AtomicInteger y = new AtomicInteger(variableSizes.get(src));
-				y.set(y.get() * db.getCandidatesBySubjectAsSet(e.predicate, matching.get(src)).size());
-
-				// Third: get target.
-				AtomicInteger z = new AtomicInteger(variableSizes.get(tgt));
-				z.set(z.get() * db.getCandidatesByObjectAsSet(e.predicate, matching.get(tgt)).size());
-
-				localEdgeSizes.put(e, Math.min(x.get(), Math.min(y.get(), z.get())));
-			}			
-		}
-
-		Map<Integer, Integer> partialMatching = new HashMap<>();
-		while (!pending.isEmpty()) {
-			LabeledEdge next = null;
-			int cost = Integer.MAX_VALUE;
+		for (int step = 0; step < m; step++) {
+			int next = -1, cost = Integer.MAX_VALUE;
 
-			for (LabeledEdge e : pending) {
-				int eCost = -1;
+			for (int i = 0; i < m; i++) {
+				if (!pending[i])
+					continue;
 
-				int src = query.getEdgeSource(e), tgt = query.getEdgeTarget(e);
+				int src = probabilitySources[i], tgt = probabilityTargets[i], eCost;
 
-				if (!partialMatching.containsKey(src) && !partialMatching.containsKey(tgt))
-					eCost = localEdgeSizes.get(e);
+				if (!bound[src] && !bound[tgt])
+					eCost = getLocalSize(i, values, assuming);
 				else
-					eCost = toIterate(e, partialMatching).size();
+					eCost = toIterate(probabilityEdges[i].predicate, bound[src] ? values[src] : Matcher.UNBOUND,
+							bound[tgt] ? values[tgt] : Matcher.UNBOUND, cursor).size();
 
 				if (eCost < cost) {
-					next = e;
+					next = i;
 					cost = eCost;
 				}
 			}
 
 			// We have a winner!
-			probabilities.add(new BigDecimal(cost));
-			pending.remove(next);
-			selected.add(next);
+			costs[step] = cost;
+			pending[next] = false;
+			bound[probabilitySources[next]] = bound[probabilityTargets[next]] = true;
+		}
+
+		return costs;
+	}
 
-			// Add to partial matching.
-			for (Integer u : List.of(query.getEdgeSource(next), query.getEdgeTarget(next)))
-				partialMatching.put(u, matching.get(u));
+	// Pairs of the edge to start from, given the values of its ends and the ones assumed to be fixed.
+	private int getLocalSize(int i, int[] values, Set<Integer> assuming) {
+		LabeledEdge e = probabilityEdges[i];
+		int src = probabilitySources[i], tgt = probabilityTargets[i];
+		boolean srcAssumed = assuming.contains(probabilityVertices[src]),
+				tgtAssumed = assuming.contains(probabilityVertices[tgt]);
+
+		if (srcAssumed && tgtAssumed)
+			return 1;
+		if (srcAssumed)
+			return db.getSubjectDegree(e.predicate, values[src]);
+		if (tgtAssumed)
+			return db.getObjectDegree(e.predicate, values[tgt]);
+
+		// Only the values matter, so successes with the same ones (e.g., the same head pair) share it.
+		long key = (long) values[src] << 32 | (values[tgt] & 0xFFFFFFFFL);
+		MutableLongIntMap cache = localSizes[i];
+		int ret;
+		synchronized (cache) {
+			ret = cache.getIfAbsent(key, -1);
 		}
 
-		return probabilities.stream().reduce(BigDecimal.ONE, (a, b) -> a.multiply(b));
+		if (ret < 0) {
+			// The edge size, or the candidates of an end times the degree of the value in that end.
+			long x = edgeSizes.get(e),
+					y = (long) variableSizes.get(probabilityVertices[src]) * db.getSubjectDegree(e.predicate, values[src]),
+					z = (long) variableSizes.get(probabilityVertices[tgt]) * db.getObjectDegree(e.predicate, values[tgt]);
+			ret = (int) Math.min(x, Math.min(y, z));
+
+			synchronized (cache) {
+				if (cache.size() >= LOCAL_SIZES_CACHE_SIZE)
+					cache.clear();
+				cache.put(key, ret);
+			}
+		}
+
+		return ret;
+	}
+
+	// The edges go last, since threads check them to know whether the rest is there.
+	private synchronized void initProbability() {
+		if (probabilityEdges != null)
+			return;
+
+		// Ties go to the first edge, in the same order as always.
+		LabeledEdge[] edges = new HashSet<>(query.edgeSet()).toArray(new LabeledEdge[0]);
+		probabilityVertices = query.vertexSet().stream().mapToInt(Integer::intValue).toArray();
+
+		Map<Integer, Integer> indexes = new HashMap<>();
+		for (int v : probabilityVertices)
+			indexes.put(v, indexes.size());
+
+		int m = edges.length;
+		probabilitySources = new int[m];
+		probabilityTargets = new int[m];
+		localSizes = new MutableLongIntMap[m];
+
+		for (int i = 0; i < m; i++) {
+			probabilitySources[i] = indexes.get(query.getEdgeSource(edges[i]));
+			probabilityTargets[i] = indexes.get(query.getEdgeTarget(edges[i]));
+			localSizes[i] = LongIntMaps.mutable.empty();
+		}
+
+		probabilityEdges = edges;
 	}
 
 	public MutableIntSet getVariableCandidates(Integer x) {
 		return getVariableCandidates(x, Map.of());
 	}
 
+	// A copy of the candidates, see getCandidates.
 	public MutableIntSet getVariableCandidates(Integer x, Map<Integer, Integer> partialMatching) {
-		MutableIntSet allCandidates = null;
+		CandidateSet ret = getCandidates(x, partialMatching);
+		return ret == null ? null : ret.toSet();
+	}
 
-		for (LabeledEdge e : query.edgesOf(x)) {
-			MutableIntSet candidates = null;
+	public CandidateSet getCandidates(int x) {
+		return getCandidates(x, Map.of());
+	}
 
-			int src = query.getEdgeSource(e), tgt = query.getEdgeTarget(e);
+	// The entities x can take given the values of its neighbors in the partial matching (if any), or null if x has no
+	// edges. They are cached by x and the values of the other ends of its edges, which are the only ones that matter;
+	// the entities of each predicate are shared by all the visitors of the view.
+	public CandidateSet getCandidates(int x, Map<Integer, Integer> partialMatching) {
+		if (refined && partialMatching.isEmpty())
+			return reducedCandidates.computeIfAbsent(x, v -> CandidateSet.of(getReduction().getCandidates(v)));
+
+		List<Integer> key = new ArrayList<>();
+		key.add(x);
+		for (LabeledEdge e : query.edgesOf(x))
+			key.add(partialMatching.getOrDefault(getOther(e, x), Matcher.UNBOUND));
+
+		CandidateSet ret = candidates.get(key);
+		if (ret == null && !candidates.containsKey(key))
+			candidates.put(key, ret = computeCandidates(x, partialMatching));
+		return ret;
+	}
 
-			if (src == x) {
-				candidates = db.getCandidatesAllSubjects(e.predicate);
+	// The end of the edge that is not x; if x is the object, it is the subject (the same for self-loops).
+	private int getOther(LabeledEdge e, int x) {
+		return query.getEdgeTarget(e) == x ? query.getEdgeSource(e) : query.getEdgeTarget(e);
+	}
 
-				if (partialMatching.containsKey(tgt)) {
-					MutableIntSet validSubjects = IntSets.mutable
-							.ofAll(db.getCandidatesByObjectAsSet(e.predicate, partialMatching.get(tgt))
-									.collect(entry -> entry.getKey()));
-					
-					validSubjects.retainAll(candidates);
-					
-					candidates = validSubjects;
-				}
-			}
+	private CandidateSet computeCandidates(int x, Map<Integer, Integer> partialMatching) {
+		CandidateSet allCandidates = null;
 
-			if (tgt == x) {
-				candidates = db.getCandidatesAllObjects(e.predicate);
-				
-				if (partialMatching.containsKey(src)) {
-					MutableIntSet validObjects = IntSets.mutable
-							.ofAll(db.getCandidatesBySubjectAsSet(e.predicate, partialMatching.get(src))
-									.collect(entry -> entry.getValue()));
-					
-					validObjects.retainAll(candidates);
-					
-					candidates = validObjects;
-				}
-			}
-
-			if (allCandidates == null)
-				allCandidates = IntSets.mutable.ofAll(candidates);
+		for (LabeledEdge e : query.edgesOf(x)) {
+			// Whether x is the object of the edge; otherwise, it is the subject. The other end may have a value.
+			boolean isObject = query.getEdgeTarget(e) == x;
+			Integer other = partialMatching.get(getOther(e, x));
+
+			CandidateSet edgeCandidates;
+			if (db.getIndex(e.predicate) == null)
+				edgeCandidates = CandidateSet.EMPTY;
+			else if (other == null)
+				edgeCandidates = getEntities(e.predicate, isObject);
 			else
-				allCandidates.retainAll(candidates);
+				edgeCandidates = getNeighbors(e.predicate, other, isObject);
+
+			allCandidates = allCandidates == null ? edgeCandidates : allCandidates.intersect(edgeCandidates);
 
 			if (allCandidates.isEmpty())
-				continue;
+				break;
 		}
 
 		return allCandidates;
 	}
 
-	public List<LabeledEdge> order = new ArrayList<>();
-	Map<LabeledEdge, Integer> edgeSizes = new HashMap<>();
-	Map<Integer, Integer> variableSizes = new HashMap<>();
+	// The subjects (or objects) of p with pairs in the view.
+	private CandidateSet getEntities(int p, boolean objects) {
+		return entities.computeIfAbsent(p * 2 + (objects ? 1 : 0), k -> {
+			PredicateIndex index = db.getIndex(p);
+
+			int count = objects ? index.getObjectCount() : index.getSubjectCount(), n = 0;
+			int[] ret = new int[count];
+
+			// Rows are sorted by entity.
+			for (int row = 0; row < count; row++)
+				if ((objects ? index.getObjectRowDegree(row) : index.getSubjectRowDegree(row)) > 0)
+					ret[n++] = objects ? index.getObject(row) : index.getSubject(row);
+
+			return CandidateSet.of(ret, n);
+		});
+	}
+
+	// The objects of the subject (or the subjects of the object) in p.
+	private CandidateSet getNeighbors(int p, int other, boolean objects) {
+		PairCursor cursor = new PairCursor();
+		if (objects)
+			db.getCandidatesBySubject(p, other, cursor);
+		else
+			db.getCandidatesByObject(p, other, cursor);
+
+		int[] ret = new int[cursor.size()];
+		for (int i = 0; cursor.next(); i++)
+			ret[i] = objects ? cursor.object() : cursor.subject();
+
+		// Each split is sorted on its own.
+		Arrays.sort(ret);
+
+		return CandidateSet.of(ret, ret.length);
+	}
+
+	// Candidate sets cached per visitor.
+	private static final int CANDIDATES_CACHE_SIZE = 1024;
+	// Local sizes cached per edge.
+	private static final int LOCAL_SIZES_CACHE_SIZE = 1 << 16;
+
+	// Only written while the visitor is built (see computeSizes).
+	final Map<LabeledEdge, Integer> edgeSizes = new HashMap<>();
+	final Map<Integer, Integer> variableSizes = new HashMap<>();
+
+	public final LabeledEdge head;
+	public final DirectedMultigraph<Integer, LabeledEdge> query;
+
+	final long totalEntities;
+
+	public final Integer split;
 
-	public LabeledEdge head;
-	public DirectedMultigraph<Integer, LabeledEdge> query;
+	final int headSize;
 
-	long totalEntities;
+	// The sizes, candidates, plans and probabilities of the visitor are computed from the state of the view when they
+	// are first needed, and they are kept; after a compaction (see GraphDatabase.compact), they do not match the
+	// indexes anymore, so visitors should be built again.
+	final GraphDatabase db;
 
-	public Integer split;
+	// The edges and vertices of the query for getProbabilityCosts, with the ends of the edges as indexes of the
+	// vertices, and the local sizes of the edges by the values of their ends (cleared when full); computed on demand.
+	volatile LabeledEdge[] probabilityEdges;
+	int[] probabilityVertices, probabilitySources, probabilityTargets;
+	MutableLongIntMap[] localSizes;
 
-	int headSize;
+	// The visitor only has what every thread shares: the query, its sizes, candidates and plans, and the configuration
+	// of the matchers below, which is set before the visitor is shared. What changes during a visit (the plan, the
+	// values, the budget and the counters) is in the matchers, one per thread (see newMatcher).
+	volatile Matcher.Engine engine = Matcher.Engine.Backtracking;
+	// Keys of the memo of the matchers in existence searches; zero for no memo.
+	volatile int memoCapacity = Matcher.MEMO_CAPACITY;
+
+	// Signature of the query (null if there is no head) and the slots of the variables in it.
+	final SignatureResult signature;
+	final Map<Integer, Integer> slots;
+
+	// Whether the edge sizes and the candidates of the variables are reduced with semi-joins; computed on demand.
+	final boolean refined;
+	SemiJoinReducer reduction;
+
+	// Candidates of the variables by variable and the values of its neighbors (the last ones used), the reduced ones,
+	// and the entities of the predicates of the view; see getCandidates. Threads can share them.
+	final Map<List<Integer>, CandidateSet> candidates = Collections.synchronizedMap(new LinkedHashMap<>(16, .75f, true) {
+		private static final long serialVersionUID = 4417237826520390121L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<Integer>, CandidateSet> eldest) {
+			return size() > CANDIDATES_CACHE_SIZE;
+		}
+	});
+	final Map<Integer, CandidateSet> reducedCandidates = new ConcurrentHashMap<>(), entities;
 
-	GraphDatabase db;
+	final QueryPlanCache plans;
+	final CostModel costs;
+
+	// The edges of the query in the order of each plan that was used (plans are only equal to themselves).
+	final Map<QueryPlan, List<LabeledEdge>> planOrders = new ConcurrentHashMap<>();
+
+	// If adaptive, matchers pick the cheapest plan for the values of each search among their plan and the ones that
+	// start with other edges (the alternatives, with the plan first); see CostModel.
+	volatile boolean adaptive;
+
+	// If reporting, matchers add the plans they use to their report, and the rule metric visitors add the reports of
+	// their matchers to the one of the visitor at the end of each computation (see addReports).
+	volatile boolean reporting;
+	final PlanReport report = new PlanReport();
+
+	// If instrumented, the same for what each step of the searches did; see MatchStats.
+	volatile boolean instrumented;
+	final MatchStats stats = new MatchStats();
 
 	public GraphVisitor(GraphDatabase db, DirectedMultigraph<Integer, LabeledEdge> query, LabeledEdge head,
 			Integer split) {
+		this(db, query, head, split, false);
+	}
+
+	private GraphVisitor(GraphDatabase db, DirectedMultigraph<Integer, LabeledEdge> query, LabeledEdge head,
+			Integer split, boolean refined) {
 		this.query = query;
 		this.head = head;
-		this.db = db;
+		// All the splits share the same indexes.
+		this.db = db.getView(split);
+		this.refined = refined;
+
+		this.headSize = head == null ? 0 : this.db.getPredicateSizes().get(head.predicate);
+
+		this.totalEntities = this.db.getStatistics().getNumberOfEntities();
+		this.entities = QueryPlanCache.of(this.db).entities;
+		this.split = split;
+
+		this.signature = head == null ? null : GraphSignature.getSignature(query, head);
+		this.plans = head == null ? null : QueryPlanCache.of(this.db);
+
+		if (head != null) {
+			slots = signature.mapping;
 
-		if (head != null)
-			this.headSize = db.getPredicateSizes().get(head.predicate);
+			// Rules with the same signature have the same sizes.
+			QueryPlanCache.Sizes sizes = plans.getSizes(new QueryPlanCache.Key(signature.signature, refined, 0),
+					this::computeSizes);
 
+			for (LabeledEdge e : query.edgeSet())
+				edgeSizes.put(e, sizes.edges[getAtom(e)]);
+
+			for (int v : query.vertexSet())
+				variableSizes.put(v, sizes.variables[slots.get(v)]);
+		} else {
+			slots = new HashMap<>();
+			for (int v : query.vertexSet())
+				slots.put(v, slots.size());
+
+			computeSizes();
+		}
+
+		costs = plans == null ? new CostModel(this.db) : new CostModel(this.db, plans.samples);
+	}
+
+	// Sizes of the edges and the variables of the query; they are also returned in the order of the signature.
+	private QueryPlanCache.Sizes computeSizes() {
 		for (LabeledEdge e : query.edgeSet())
 			edgeSizes.put(e, db.getPredicateSizes().get(e.predicate));
 
+		if (refined)
+			refineCandidates();
+
 		for (int v : query.vertexSet())
-			variableSizes.put(v, getVariableCandidates(v).size());
+			variableSizes.put(v, getCandidates(v).size());
 
-		this.totalEntities = db.getNumberOfEntities();
-		this.split = split;
+		QueryPlanCache.Sizes ret = new QueryPlanCache.Sizes();
+		ret.variables = new int[slots.size()];
+		for (int v : query.vertexSet())
+			ret.variables[slots.get(v)] = variableSizes.get(v);
+
+		if (signature != null) {
+			ret.edges = new int[signature.signature.length];
+			for (LabeledEdge e : query.edgeSet())
+				ret.edges[getAtom(e)] = edgeSizes.get(e);
+		}
+
+		return ret;
+	}
+
+	// Position of the edge in the signature.
+	private int getAtom(LabeledEdge e) {
+		int s = slots.get(query.getEdgeSource(e)), o = slots.get(query.getEdgeTarget(e));
+
+		for (int i = 0; i < signature.signature.length; i++) {
+			SignatureAtom sa = signature.signature[i];
+			if (sa.s == s && sa.o == o && sa.p == e.predicate)
+				return i;
+		}
+
+		throw new RuntimeException("Edge " + e + " not found in the signature!");
 	}
 
 	public static GraphVisitor getPCAConfVisitor(GraphDatabase db, DirectedMultigraph<Integer, LabeledEdge> query,
@@ -236,109 +437,138 @@ public class GraphVisitor {
 		} else
 			throw new RuntimeException("Variable to corrupt: " + varToCorrupt + " not found in head!");
 
-		GraphVisitor toRet = new GraphVisitor(db, ret, newHead, split);
-
-		toRet.refineCandidates();
+		// The edge sizes and the candidates are reduced with semi-joins.
+		return new GraphVisitor(db, ret, newHead, split, true);
+	}
 
-		for (int var : query.vertexSet())
-			toRet.variableSizes.put(var, toRet.getVariableCandidates(var).size());
+	// The sizes of the edges are the pairs between the candidates left by the semi-join reduction.
+	private void refineCandidates() {
+		for (LabeledEdge e : query.edgeSet())
+			edgeSizes.put(e, getReduction().getSize(e));
+	}
 
-		return toRet;
+	synchronized SemiJoinReducer getReduction() {
+		if (reduction == null)
+			reduction = new SemiJoinReducer(db, query).reduce();
+		return reduction;
 	}
 
-	public void refineCandidates() {
-		for (LabeledEdge e : edgeSizes.keySet()) {
-			int u = query.getEdgeSource(e), up = query.getEdgeTarget(e);
+	public static GraphVisitor getCWAConfVisitor(GraphDatabase db, DirectedMultigraph<Integer, LabeledEdge> query,
+			LabeledEdge head, Integer split) {
+		DirectedMultigraph<Integer, LabeledEdge> ret = LanguageBias.cloneSubgraph(query, head);
 
-			// Let's get its candidates.
-			MutableSet<Entry<Integer, Integer>> eEntries = Sets.mutable.ofAll(db.getCandidatesAsSet(e.predicate));
+		// New head is null.
+		return new GraphVisitor(db, ret, null, split);
+	}
 
-			// Let's get the touching edges.
-			Set<LabeledEdge> touchingEdges = new HashSet<>();
-			for (LabeledEdge touching : query.edgesOf(u))
-				touchingEdges.add(touching);
+	public GraphDatabase getDb() {
+		return db;
+	}
 
-			for (LabeledEdge touching : query.edgesOf(up))
-				touchingEdges.add(touching);
+	// The edges of the query in the order of the plan, which must be a plan of the visitor; it cannot be changed.
+	public List<LabeledEdge> getOrder(QueryPlan plan) {
+		return planOrders.computeIfAbsent(plan, p -> List.copyOf(getEdges(p)));
+	}
 
-			// Remove the current edge.
-			touchingEdges.remove(e);
+	public QueryPlan getPlan(Collection<Integer> groundedVariables) {
+		return getPlan(groundedVariables, null);
+	}
 
-			// Get the edges touching u; skip e.
-			for (LabeledEdge touching : touchingEdges) {
-				// For the touching edge, we can have tu = u or tu = up, or tup = u or tup = up.
-				int tu = query.getEdgeSource(touching), tup = query.getEdgeTarget(touching);
+	// The plan that matches first (after the edges with both ends grounded) the given edge; if null, the cheapest.
+	public QueryPlan getPlan(Collection<Integer> groundedVariables, LabeledEdge first) {
+		if (plans == null)
+			return compile(groundedVariables, first);
 
-				// This is just to make sure there are no other choices.
-				boolean checked = false;
+		return plans.getPlan(new QueryPlanCache.Key(signature.signature, refined,
+				QueryPlan.getMask(groundedVariables, slots), first == null ? -1 : getAtom(first)),
+				() -> compile(groundedVariables, first));
+	}
 
-				if (tu == u && tup != up) {
-					checked = true;
+	// The plan and the plans that start with each of the other edges with a single grounded end.
+	List<QueryPlan> getAlternatives(QueryPlan plan) {
+		Set<Integer> groundedVariables = new HashSet<>();
+		for (int v : query.vertexSet())
+			if (plan.isGrounded(slots.get(v)))
+				groundedVariables.add(v);
 
-					// All eEntries must have touching subjects.
-					MutableIntSet validSubjects = db.getCandidatesAllSubjects(touching.predicate);
-					eEntries.removeIf(entry -> !validSubjects.contains(entry.getKey()));
-				} else if (tu != u && tup == up) {
-					checked = true;
+		List<QueryPlan> ret = new ArrayList<>(List.of(plan));
 
-					// All eEntries must have touching objects.
-					MutableIntSet validObjects = db.getCandidatesAllObjects(touching.predicate);
-					eEntries.removeIf(entry -> !validObjects.contains(entry.getValue()));
-				} else if (tu == u && tup == up) {
-					checked = true;
+		for (LabeledEdge e : query.edgeSet())
+			if (groundedVariables.contains(query.getEdgeSource(e)) != groundedVariables
+					.contains(query.getEdgeTarget(e))) {
+				QueryPlan alternative = getPlan(groundedVariables, e);
 
-					// All eEntries must have the same entries.
-					eEntries.retainAll(db.getCandidatesAsSet(touching.predicate));
-				}
+				if (ret.stream().noneMatch(alternative::hasSameOrder))
+					ret.add(alternative);
+			}
 
-				if (tup == u && tu != up) {
-					checked = true;
+		return ret;
+	}
 
-					// All eEntries must have touching objects.
-					MutableIntSet validSubjects = db.getCandidatesAllObjects(touching.predicate);
-					eEntries.removeIf(entry -> !validSubjects.contains(entry.getKey()));
-				} else if (tup != u && tu == up) {
-					checked = true;
+	public void setAdaptiveOrder(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
 
-					// All eEntries must have touching subjects.
-					MutableIntSet validObjects = db.getCandidatesAllSubjects(touching.predicate);
-					eEntries.removeIf(entry -> !validObjects.contains(entry.getValue()));
-				} else if (tup == u && tu == up) {
-					checked = true;
+	public boolean isAdaptiveOrder() {
+		return adaptive;
+	}
 
-					// All eEntries must have the same entries, but backwards.
-					MutableSet<Entry<Integer, Integer>> reversedEntries = Sets.mutable.empty();
-					for (Entry<Integer, Integer> entry : db.getCandidatesAsSet(touching.predicate)) {
-						Entry<Integer, Integer> newEntry = Map.entry(entry.getValue(), entry.getKey());
+	public void setReporting(boolean reporting) {
+		this.reporting = reporting;
+	}
 
-						reversedEntries.add(newEntry);
-					}
+	public boolean isReporting() {
+		return reporting;
+	}
 
-					eEntries.retainAll(reversedEntries);
-				}
+	public PlanReport getPlanReport() {
+		return report;
+	}
 
-				if (!checked)
-					throw new RuntimeException("This was never checked! Edge: " + e + "; touching: " + touching);
-			}
+	public void setInstrumented(boolean instrumented) {
+		this.instrumented = instrumented;
+	}
 
-			edgeSizes.put(e, eEntries.size());
-		}
+	public boolean isInstrumented() {
+		return instrumented;
 	}
 
-	public static GraphVisitor getCWAConfVisitor(GraphDatabase db, DirectedMultigraph<Integer, LabeledEdge> query,
-			LabeledEdge head, Integer split) {
-		DirectedMultigraph<Integer, LabeledEdge> ret = LanguageBias.cloneSubgraph(query, head);
+	public MatchStats getMatchStats() {
+		return stats;
+	}
 
-		// New head is null.
-		return new GraphVisitor(db, ret, null, split);
+	public CostModel getCostModel() {
+		return costs;
 	}
 
-	public GraphDatabase getDb() {
-		return db;
+	private QueryPlan compile(Collection<Integer> groundedVariables, LabeledEdge first) {
+		return new QueryPlan(computeOrder(groundedVariables, first), query, slots, groundedVariables, costs);
+	}
+
+	// The plan may come from another rule with the same signature; we find the edges with the same slots.
+	private List<LabeledEdge> getEdges(QueryPlan plan) {
+		List<LabeledEdge> ret = new ArrayList<>();
+		Set<LabeledEdge> pending = new HashSet<>(query.edgeSet());
+
+		for (int i = 0; i < plan.size(); i++) {
+			LabeledEdge found = null;
+			for (LabeledEdge e : pending)
+				if (e.predicate == plan.getPredicate(i) && slots.get(query.getEdgeSource(e)) == plan.getSource(i)
+						&& slots.get(query.getEdgeTarget(e)) == plan.getTarget(i))
+					found = e;
+
+			if (found == null)
+				throw new RuntimeException("Plan " + plan + " does not fit the query!");
+
+			ret.add(found);
+			pending.remove(found);
+		}
+
+		return ret;
 	}
 
-	public void getOrder(Collection<Integer> groundedVariables) {
-		order.clear();
+	private List<LabeledEdge> computeOrder(Collection<Integer> groundedVariables, LabeledEdge first) {
+		List<LabeledEdge> order = new ArrayList<>();
 
 		// Grounded variables are the variables that will be grounded (one specific
 		// value) when solving the query. This collection can be empty if none are
@@ -347,6 +577,10 @@ public class GraphVisitor {
 
 		Set<LabeledEdge> pending = new HashSet<>(query.edgeSet());
 
+		// The edge that gives a value to each variable (see CostModel); grounded variables only get one from the edges
+		// with both ends grounded.
+		Map<Integer, Integer> from = new HashMap<>();
+
 		// All edges with grounded variables will go first.
 		List<LabeledEdge> edgesWithTwoGroundedVars = new ArrayList<>();
 
@@ -361,6 +595,9 @@ public class GraphVisitor {
 			if (listToAdd != null) {
 				listToAdd.add(e);
 
+				from.putIfAbsent(x, CostModel.getFrom(e.predicate, true));
+				from.putIfAbsent(y, CostModel.getFrom(e.predicate, false));
+
 				variablesInOrder.addAll(Set.of(x, y));
 				variablesWithValues.addAll(Set.of(x, y));
 			}
@@ -371,6 +608,8 @@ public class GraphVisitor {
 		// These regardless of the size.
 		order.addAll(edgesWithTwoGroundedVars);
 
+		LabeledEdge forced = first != null && pending.contains(first) ? first : null;
+
 		while (!pending.isEmpty()) {
 			LabeledEdge next = null;
 			double estimatedCost = Double.MAX_VALUE;
@@ -379,8 +618,6 @@ public class GraphVisitor {
 				int x = query.getEdgeSource(e), y = query.getEdgeTarget(e);
 				Set<Integer> currentVars = Set.of(x, y);
 
-				double eCost = edgeSizes.get(e).doubleValue();
-
 				// Compute connections to previous edges in the order and those grounded.
 				int connections = SetUtils.intersection(currentVars, variablesInOrder).size(),
 						grounded = SetUtils.intersection(currentVars, variablesWithValues).size();
@@ -397,99 +634,81 @@ public class GraphVisitor {
 					continue;
 				}
 
-				// For each predicate, there can be, at most, n*(n-1) directed edges, where n is
-				// the number of entities. If we divide the predicate sizes by these values, we
-				// have the "expectation" of an edge existing.
-				double gamma = (edgeSizes.get(e) * 1.0) / (totalEntities * (totalEntities - 1));
+				// The pairs per partial matching, given where the values of the ends come from. Edges with no
+				// connections are scans, which are way more expensive, so there are no Cartesian products.
+				double eCost = costs.getFanOut(e.predicate,
+						QueryPlan.getAccess(variablesWithValues.contains(x), variablesWithValues.contains(y)),
+						from.getOrDefault(x, CostModel.NONE), from.getOrDefault(y, CostModel.NONE));
 
-				// Adjust cost based on connections and grounded. Giving priority to connections
-				// to avoid Cartesian products in the final order.
-				eCost = eCost * Math.pow(gamma, 2 * connections + grounded);
-
-				if (eCost < estimatedCost) {
+				// Ties go to the smallest edge.
+				if (eCost < estimatedCost || (eCost == estimatedCost && next != null && estimatedCost > 0
+						&& edgeSizes.get(e) < edgeSizes.get(next))) {
 					next = e;
 					estimatedCost = eCost;
 				}
 			}
 
+			// Unless it is forced.
+			if (forced != null) {
+				next = forced;
+				forced = null;
+			}
+
 			// We have a winner!
 			order.add(next);
 			pending.remove(next);
 
 			int x = query.getEdgeSource(next), y = query.getEdgeTarget(next);
 
+			if (!variablesWithValues.contains(x))
+				from.put(x, CostModel.getFrom(next.predicate, true));
+			if (!variablesWithValues.contains(y))
+				from.put(y, CostModel.getFrom(next.predicate, false));
+
 			variablesWithValues.addAll(Set.of(x, y));
 			variablesInOrder.addAll(Set.of(x, y));
 		}
-	}
 
-	public AtomicInteger matchingCalls = new AtomicInteger(), failures = new AtomicInteger();
-
-	public void matching(int i, Map<Integer, Integer> partialMatching, Consumer<Map<Integer, Integer>> matchingFound,
-			BiFunction<LabeledEdge, Map<Integer, Integer>, MutableList<Entry<Integer, Integer>>> iterate,
-			Predicate<Void> earlyStopping) {
-		matchingCalls.incrementAndGet();
-
-		if (i == order.size())
-			matchingFound.accept(partialMatching);
-		else {
-			// First time! Reset matching calls!
-			if (i == 0) {
-				matchingCalls.set(1);
-				failures.set(0);
-			}
-
-			LabeledEdge e = order.get(i);
-			int u = query.getEdgeSource(e), up = query.getEdgeTarget(e);
-			boolean replaceU = !partialMatching.containsKey(u), replaceUp = !partialMatching.containsKey(up);
-
-			Set<Integer> valuesAsSet = new HashSet<>(partialMatching.values());
-
-			MutableList<Entry<Integer, Integer>> pairs = iterate.apply(e, partialMatching);
-
-			int matches = 0;
-
-			Iterator<Entry<Integer, Integer>> it = pairs.iterator();
-			while (it.hasNext()) {
-				Entry<Integer, Integer> pair = it.next();
-
-				int v = pair.getKey(), vp = pair.getValue();
-
-				// Injective function!
-				if (replaceU && valuesAsSet.contains(v))
-					continue;
+		return order;
+	}
 
-				if (replaceUp && valuesAsSet.contains(vp))
-					continue;
+	public void setEngine(Matcher.Engine engine) {
+		this.engine = engine;
+	}
 
-				matches++;
+	public Matcher.Engine getEngine() {
+		return engine;
+	}
 
-				if (replaceU)
-					partialMatching.put(u, v);
-				if (replaceUp)
-					partialMatching.put(up, vp);
+	public void setMemoCapacity(int memoCapacity) {
+		this.memoCapacity = memoCapacity;
+	}
 
-				matching(i + 1, partialMatching, matchingFound, iterate, earlyStopping);
+	public int getMemoCapacity() {
+		return memoCapacity;
+	}
 
-				if (replaceU)
-					partialMatching.remove(u);
-				if (replaceUp)
-					partialMatching.remove(up);
+	// Sets up (or removes) the memo of the matcher before a visit.
+	public Matcher withMemo(Matcher matcher) {
+		return memoCapacity > 0 ? matcher.setMemo(memoCapacity) : matcher.removeMemo();
+	}
 
-				// Check whether we are done early.
-				if (earlyStopping.test(null))
-					return;
-			}
+	// A matcher with its own plan (to be set before searching), state, budget and counters; one per thread.
+	public Matcher newMatcher() {
+		return new Matcher(this);
+	}
 
-			if (matches == 0)
-				failures.incrementAndGet();
-		}
+	// Adds what the matcher reported to the report and the stats of the visitor; matchers of several threads can do it
+	// at once.
+	public void addReports(Matcher matcher) {
+		if (reporting)
+			report.merge(matcher.getPlanReport());
+		if (instrumented)
+			stats.merge(matcher.getMatchStats());
 	}
 
 	public boolean isInHeadCandidates(int s, int o) {
-		// TODO Optimize! We could check sizes and run contains over the smaller.
-		MutableSet<Entry<Integer, Integer>> subjectPairs = db.getCandidatesBySubjectAsSet(head.predicate, s);
-		return subjectPairs != null && subjectPairs.contains(Map.entry(s, o));
+		return db.hasTriple(head.predicate, s, o);
 	}
 
 	public int getHeadSize() {
@@ -0,0 +1,237 @@
+package edu.rit.goal.visitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.rit.goal.graph.GraphDatabase;
+import edu.rit.goal.graph.index.SortedCursor;
+
+// Worst-case optimal join (leapfrog triejoin) over the plan of a GraphVisitor. Instead of an edge at a time, it binds a
+// variable at a time: the candidates of a variable are the intersection of the sorted entities that each of its edges
+// allows given the variables bound before, so there are no intermediate results of an edge that the rest of the rule
+// throws away. This matters for closed rules (cycles) around hub entities. It works on the values of the matcher, so
+// the callbacks see the same thing as with backtracking.
+class LeapfrogJoin {
+	Matcher matcher;
+	GraphDatabase db;
+
+	// The plan the rest was compiled for.
+	QueryPlan plan;
+
+	// Per depth: the slot bound at that depth and, for each edge with the variable, the predicate, whether the variable
+	// is the subject, the slot of the other end if it is bound before (otherwise, unbound), and a cursor.
+	int[] slots;
+	int[][] predicates, others;
+	boolean[][] isSubject;
+	SortedCursor[][] cursors;
+
+	// Edges whose variables are the same (checked at the depth of the variable), and edges whose variables are both
+	// grounded (checked once).
+	int[][] loops;
+	int[] groundedPredicates, groundedSources, groundedTargets;
+
+	LeapfrogJoin(Matcher matcher) {
+		super();
+		this.matcher = matcher;
+		this.db = matcher.visitor.db;
+	}
+
+	void run() {
+		if (plan != matcher.plan)
+			compile(matcher.plan);
+
+		if (matcher.counting)
+			matcher.stats.ensure(slots.length + 1);
+
+		int[] values = matcher.values;
+		for (int i = 0; i < groundedPredicates.length; i++)
+			if (!db.hasTriple(groundedPredicates[i], values[groundedSources[i]], values[groundedTargets[i]])) {
+				matcher.failures++;
+				return;
+			}
+
+		join(0);
+	}
+
+	// Variables are bound in the order they show up in the plan, so every variable but the first is connected to
+	// the ones before it.
+	private void compile(QueryPlan plan) {
+		this.plan = plan;
+
+		int[] depths = new int[plan.getVariables()];
+		Arrays.fill(depths, -1);
+
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < plan.size(); i++)
+			for (int slot : new int[] { plan.getSource(i), plan.getTarget(i) })
+				if (!plan.isGrounded(slot) && depths[slot] < 0) {
+					depths[slot] = order.size();
+					order.add(slot);
+				}
+
+		int n = order.size();
+		slots = order.stream().mapToInt(Integer::intValue).toArray();
+
+		List<List<int[]>> participants = new ArrayList<>(), loopsByDepth = new ArrayList<>();
+		for (int d = 0; d < n; d++) {
+			participants.add(new ArrayList<>());
+			loopsByDepth.add(new ArrayList<>());
+		}
+
+		List<int[]> grounded = new ArrayList<>();
+
+		for (int i = 0; i < plan.size(); i++) {
+			int p = plan.getPredicate(i), u = plan.getSource(i), up = plan.getTarget(i);
+
+			if (plan.isGrounded(u) && plan.isGrounded(up))
+				grounded.add(new int[] { p, u, up });
+			else if (u == up)
+				loopsByDepth.get(depths[u]).add(new int[] { p });
+			else {
+				// Each end that is not grounded takes part in the intersection of its variable.
+				if (!plan.isGrounded(u))
+					participants.get(depths[u]).add(new int[] { p, 1, isBefore(up, u, depths) ? up : Matcher.UNBOUND });
+				if (!plan.isGrounded(up))
+					participants.get(depths[up]).add(new int[] { p, 0, isBefore(u, up, depths) ? u : Matcher.UNBOUND });
+			}
+		}
+
+		predicates = new int[n][];
+		others = new int[n][];
+		isSubject = new boolean[n][];
+		cursors = new SortedCursor[n][];
+		loops = new int[n][];
+
+		for (int d = 0; d < n; d++) {
+			List<int[]> list = participants.get(d);
+
+			predicates[d] = new int[list.size()];
+			others[d] = new int[list.size()];
+			isSubject[d] = new boolean[list.size()];
+			cursors[d] = new SortedCursor[list.size()];
+
+			for (int j = 0; j < list.size(); j++) {
+				predicates[d][j] = list.get(j)[0];
+				isSubject[d][j] = list.get(j)[1] == 1;
+				others[d][j] = list.get(j)[2];
+				cursors[d][j] = new SortedCursor();
+			}
+
+			loops[d] = loopsByDepth.get(d).stream().mapToInt(a -> a[0]).toArray();
+
+			if (list.isEmpty())
+				throw new RuntimeException("Variable in slot " + slots[d] + " has no edges to join in plan: " + plan);
+		}
+
+		groundedPredicates = grounded.stream().mapToInt(a -> a[0]).toArray();
+		groundedSources = grounded.stream().mapToInt(a -> a[1]).toArray();
+		groundedTargets = grounded.stream().mapToInt(a -> a[2]).toArray();
+	}
+
+	// Whether slot has a value when other is bound.
+	private static boolean isBefore(int slot, int other, int[] depths) {
+		return depths[slot] < depths[other];
+	}
+
+	private void join(int d) {
+		matcher.matchingCalls++;
+		if (matcher.counting)
+			matcher.stats.calls[d]++;
+
+		if (d == slots.length) {
+			matcher.accept();
+			return;
+		}
+
+		int[] values = matcher.values;
+		SortedCursor[] its = cursors[d];
+		int k = its.length;
+
+		for (int j = 0; j < k; j++) {
+			int p = predicates[d][j], other = others[d][j];
+
+			if (other == Matcher.UNBOUND) {
+				if (isSubject[d][j])
+					db.getSubjects(p, its[j]);
+				else
+					db.getObjects(p, its[j]);
+			} else if (isSubject[d][j])
+				db.getSubjectsByObject(p, values[other], its[j]);
+			else
+				db.getObjectsBySubject(p, values[other], its[j]);
+
+			if (its[j].atEnd()) {
+				matcher.failures++;
+				return;
+			}
+		}
+
+		// Sort by key; the cursors are interchangeable, so we sort them in place.
+		for (int j = 1; j < k; j++)
+			for (int l = j; l > 0 && its[l - 1].key() > its[l].key(); l--) {
+				SortedCursor tmp = its[l];
+				its[l] = its[l - 1];
+				its[l - 1] = tmp;
+			}
+
+		int slot = slots[d], matches = 0, current = 0, max = its[k - 1].key();
+
+		while (true) {
+			SortedCursor it = its[current];
+
+			if (it.key() == max) {
+				if (matcher.counting)
+					matcher.stats.candidates[d]++;
+
+				// All the cursors agree.
+				if (isCandidate(d, max)) {
+					matches++;
+
+					values[slot] = max;
+					matcher.used.add(max);
+
+					join(d + 1);
+
+					values[slot] = Matcher.UNBOUND;
+					matcher.used.remove(max);
+
+					// Check whether we are done early.
+					if (matcher.stopping.getAsBoolean()) {
+						if (matcher.counting && !matcher.unwinding) {
+							matcher.stats.stopped[d]++;
+							matcher.unwinding = true;
+						}
+						return;
+					}
+				} else if (matcher.counting)
+					matcher.stats.rejected[d]++;
+
+				it.next();
+			} else
+				it.seek(max);
+
+			if (it.atEnd())
+				break;
+
+			max = it.key();
+			current = (current + 1) % k;
+		}
+
+		if (matches == 0)
+			matcher.failures++;
+	}
+
+	private boolean isCandidate(int d, int value) {
+		// Injective function!
+		if (matcher.used.contains(value))
+			return false;
+
+		for (int p : loops[d])
+			if (!db.hasTriple(p, value, value))
+				return false;
+
+		return true;
+	}
+
+}
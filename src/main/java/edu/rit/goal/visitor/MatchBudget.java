@@ -0,0 +1,88 @@
+package edu.rit.goal.visitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+// How much the searches of a visit can take: matching calls, CPU time (nanoseconds), or both (zero for no limit). The
+// matchers spend it as they go and stop their searches when it runs out; the visit then ends with what it has, which
+// the visitor flags as truncated. Once it runs out, it stays that way until the next start. Matchers of different
+// threads can share it, as the CPU time of each search is added up.
+public class MatchBudget {
+	// The CPU time is checked once every so many checks, since getting it is not free.
+	private static final int TIME_CHECKS = 1024;
+
+	long maxCalls, maxTime;
+
+	AtomicLong calls = new AtomicLong(), time = new AtomicLong();
+	volatile boolean exhausted;
+
+	public MatchBudget(long maxCalls, long maxTime) {
+		super();
+		this.maxCalls = maxCalls;
+		this.maxTime = maxTime;
+	}
+
+	// Null if there are no limits, so that nothing is checked.
+	public static MatchBudget of(long maxCalls, long maxTime) {
+		return maxCalls > 0 || maxTime > 0 ? new MatchBudget(maxCalls, maxTime) : null;
+	}
+
+	// Beginning of a visit.
+	public void start() {
+		calls.set(0);
+		time.set(0);
+		exhausted = false;
+	}
+
+	public boolean isExhausted() {
+		return exhausted;
+	}
+
+	public long getCalls() {
+		return calls.get();
+	}
+
+	public long getTime() {
+		return time.get();
+	}
+
+	// The CPU time of the thread when a search starts.
+	long startSearch() {
+		return maxTime > 0 ? getCpuTime() : 0;
+	}
+
+	// Whether the search that started at the time and took the calls so far has to stop; checks counts the times it
+	// was called in the search.
+	boolean check(long searchCalls, long searchStart, long checks) {
+		if (exhausted)
+			return true;
+
+		if (maxCalls > 0 && calls.get() + searchCalls >= maxCalls)
+			exhausted = true;
+		else if (maxTime > 0 && checks % TIME_CHECKS == 0 && time.get() + getCpuTime() - searchStart >= maxTime)
+			exhausted = true;
+
+		return exhausted;
+	}
+
+	void endSearch(long searchCalls, long searchStart) {
+		calls.addAndGet(searchCalls);
+		if (maxTime > 0) {
+			time.addAndGet(getCpuTime() - searchStart);
+			if (time.get() >= maxTime)
+				exhausted = true;
+		}
+		if (maxCalls > 0 && calls.get() >= maxCalls)
+			exhausted = true;
+	}
+
+	private static long getCpuTime() {
+		return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+	}
+
+	@Override
+	public String toString() {
+		return "calls: " + calls + "/" + maxCalls + "; time: " + time + "/" + maxTime + (exhausted ? " (exhausted)" : "");
+	}
+
+}
@@ -0,0 +1,145 @@
+package edu.rit.goal.visitor;
+
+import java.util.Arrays;
+
+// Bounded cache of whether the search of the matcher from a position in the plan, with the values of the slots that the
+// rest of the plan needs, finds a matching. Head pairs that share a subject or an object (hubs) repeat the same searches
+// over and over, so the answer is here after the first time. There are as many keys as sets times WAYS; a key always
+// goes to the same set and, when the set is full, the CLOCK hand evicts the first entry not used since its last turn.
+//
+// Successes keep the values the search found for the slots that were unbound (the witness), so the matcher can check
+// they are still free; failures are only kept when no candidate was thrown away because its value was used, so they do
+// not depend on the values of the rest of the slots. Nothing is allocated after the first reset of a plan.
+public class MatchMemo {
+	private static final int WAYS = 4;
+
+	// Position in the plan (negative if the entry is empty), the key and the witness of each entry.
+	int sets, width;
+	int[] positions, keys, witnesses;
+	boolean[] success, referenced;
+	int[] hands;
+
+	long hits, misses, evictions;
+
+	public MatchMemo(int capacity) {
+		super();
+		sets = Math.max(1, capacity / WAYS);
+		positions = new int[sets * WAYS];
+		success = new boolean[sets * WAYS];
+		referenced = new boolean[sets * WAYS];
+		hands = new int[sets];
+		keys = witnesses = new int[0];
+		reset(0);
+	}
+
+	public int getCapacity() {
+		return sets * WAYS;
+	}
+
+	// Forgets everything, e.g., when the plan or the data changes; width is the number of slots of the plan.
+	public void reset(int width) {
+		if (width > this.width) {
+			this.width = width;
+			keys = new int[sets * WAYS * width];
+			witnesses = new int[sets * WAYS * width];
+		}
+
+		Arrays.fill(positions, -1);
+		Arrays.fill(referenced, false);
+		Arrays.fill(hands, 0);
+		hits = misses = evictions = 0;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public double getHitRate() {
+		return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+	}
+
+	// The entry of the position with the values of the key slots, or -1.
+	int lookup(int position, int[] values, int[] keySlots) {
+		int set = getSet(position, values, keySlots);
+
+		for (int w = 0; w < WAYS; w++) {
+			int entry = set * WAYS + w;
+
+			if (positions[entry] == position && hasKey(entry, values, keySlots)) {
+				referenced[entry] = true;
+				hits++;
+				return entry;
+			}
+		}
+
+		misses++;
+		return -1;
+	}
+
+	boolean isSuccess(int entry) {
+		return success[entry];
+	}
+
+	// The value of the k-th slot that was unbound in the search of the entry.
+	int getWitness(int entry, int k) {
+		return witnesses[entry * width + k];
+	}
+
+	// The witness of a success is taken from the values of the matching that was found.
+	void put(int position, int[] values, int[] keySlots, boolean found, int[] matching, int[] freeSlots) {
+		int set = getSet(position, values, keySlots), entry = -1;
+
+		for (int w = 0; w < WAYS && entry < 0; w++)
+			if (positions[set * WAYS + w] < 0)
+				entry = set * WAYS + w;
+
+		if (entry < 0) {
+			// Second chance to the entries used since the hand went over them.
+			int hand = hands[set];
+			while (referenced[set * WAYS + hand]) {
+				referenced[set * WAYS + hand] = false;
+				hand = (hand + 1) % WAYS;
+			}
+
+			entry = set * WAYS + hand;
+			hands[set] = (hand + 1) % WAYS;
+			evictions++;
+		}
+
+		positions[entry] = position;
+		success[entry] = found;
+		referenced[entry] = false;
+
+		for (int k = 0; k < keySlots.length; k++)
+			keys[entry * width + k] = values[keySlots[k]];
+
+		if (found)
+			for (int k = 0; k < freeSlots.length; k++)
+				witnesses[entry * width + k] = matching[freeSlots[k]];
+	}
+
+	private boolean hasKey(int entry, int[] values, int[] keySlots) {
+		for (int k = 0; k < keySlots.length; k++)
+			if (keys[entry * width + k] != values[keySlots[k]])
+				return false;
+		return true;
+	}
+
+	private int getSet(int position, int[] values, int[] keySlots) {
+		int h = position;
+		for (int slot : keySlots)
+			h = 31 * h + values[slot];
+
+		h *= 0x9E3779B9;
+		return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % sets;
+	}
+
+}
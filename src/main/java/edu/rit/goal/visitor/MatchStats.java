@@ -0,0 +1,76 @@
+package edu.rit.goal.visitor;
+
+import java.util.Arrays;
+
+// Where the searches of the matcher spend their time, per step: the calls that got to the step (the depth histogram),
+// the candidates the step went over, the ones thrown away because their values were used (or, in leapfrog, because
+// they broke a self-loop or a grounded edge), and the searches that stopped early at the step. With backtracking, the
+// steps are the positions in the plan (the last one is for matchings found); in leapfrog, the variables in the order
+// they are bound. Matchers only count when the visitor is instrumented, so it costs nothing otherwise.
+public class MatchStats {
+	long[] calls = new long[0], candidates = new long[0], rejected = new long[0], stopped = new long[0];
+
+	// Makes room for the steps of a search; there is one more step than edges (or variables).
+	void ensure(int steps) {
+		if (calls.length < steps) {
+			calls = Arrays.copyOf(calls, steps);
+			candidates = Arrays.copyOf(candidates, steps);
+			rejected = Arrays.copyOf(rejected, steps);
+			stopped = Arrays.copyOf(stopped, steps);
+		}
+	}
+
+	public synchronized void merge(MatchStats other) {
+		ensure(other.calls.length);
+		for (int i = 0; i < other.calls.length; i++) {
+			calls[i] += other.calls[i];
+			candidates[i] += other.candidates[i];
+			rejected[i] += other.rejected[i];
+			stopped[i] += other.stopped[i];
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(calls, 0);
+		Arrays.fill(candidates, 0);
+		Arrays.fill(rejected, 0);
+		Arrays.fill(stopped, 0);
+	}
+
+	public int getSteps() {
+		return calls.length;
+	}
+
+	public long getCalls(int step) {
+		return calls[step];
+	}
+
+	public long getCandidates(int step) {
+		return candidates[step];
+	}
+
+	public long getRejected(int step) {
+		return rejected[step];
+	}
+
+	public long getStopped(int step) {
+		return stopped[step];
+	}
+
+	// The step with the most candidates, which is usually where a slow rule blows up, or -1 if nothing was counted.
+	public int getWorstStep() {
+		int ret = -1;
+		for (int i = 0; i < candidates.length; i++)
+			if (candidates[i] > 0 && (ret < 0 || candidates[i] > candidates[ret]))
+				ret = i;
+		return ret;
+	}
+
+	// To report next to the rest of the metrics of a rule.
+	@Override
+	public String toString() {
+		return "calls: " + Arrays.toString(calls) + "; candidates: " + Arrays.toString(candidates) + "; rejected: "
+				+ Arrays.toString(rejected) + "; stopped: " + Arrays.toString(stopped);
+	}
+
+}
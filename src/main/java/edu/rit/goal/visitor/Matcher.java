@@ -0,0 +1,497 @@
+package edu.rit.goal.visitor;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.collections.api.factory.primitive.IntSets;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
+
+import edu.rit.goal.graph.LabeledEdge;
+import edu.rit.goal.graph.index.PairCursor;
+
+// Backtracking matcher over a plan of a GraphVisitor. Variables of the query are slots of an array of values (the
+// slots of the plan), the values in use are in a reusable set (the matching is injective), and there is a cursor per
+// position in the order. Nothing is allocated per step; a matcher is reused across searches, but it cannot be used by
+// two threads at once. A matcher is the execution context of a thread: it has its own plan, values, budget, counters,
+// report and stats, and only reads the visitor, so threads can match the same rule at once, each with a matcher (see
+// newMatcher).
+public class Matcher {
+	public static final int UNBOUND = -1;
+
+	// Default number of keys of the memo of existence searches.
+	public static final int MEMO_CAPACITY = 1 << 16;
+
+	// With adaptive order, an alternative has to be this much cheaper than the plan of the matcher, or we stay with it.
+	private static final double ADAPTIVE_FACTOR = 2;
+
+	// How matchings are found: an edge at a time, or a variable at a time with a worst-case optimal join.
+	public enum Engine {
+		Backtracking, Leapfrog
+	}
+
+	// Called when all the edges in the order are matched; the values are in the matcher.
+	@FunctionalInterface
+	public interface MatchFound {
+		void accept(Matcher matcher);
+	}
+
+	// Can replace the candidates of the i-th edge in the order, e.g., to take a single one at random.
+	@FunctionalInterface
+	public interface CandidateSelector {
+		PairCursor select(int i, PairCursor candidates, Matcher matcher);
+	}
+
+	GraphVisitor visitor;
+
+	// Slot of each variable in the query and the other way around.
+	Map<Integer, Integer> slots;
+	int[] variables;
+
+	// Current values of the slots.
+	int[] values;
+	MutableIntSet used = IntSets.mutable.empty();
+
+	// Plan of the searches with the edges of the query in its order and, if the order is adaptive, its alternatives
+	// (see setPlan).
+	QueryPlan basePlan;
+	List<LabeledEdge> baseEdges;
+	List<QueryPlan> alternatives = List.of();
+	List<List<LabeledEdge>> alternativeOrders = List.of();
+
+	// Plan of the current search and its edges; there is a cursor to iterate the candidates per position.
+	QueryPlan plan;
+	List<LabeledEdge> edges;
+	PairCursor[] cursors = new PairCursor[0];
+
+	MatchFound found;
+	BooleanSupplier stopping;
+	CandidateSelector selector;
+
+	// Created on demand.
+	LeapfrogJoin leapfrog;
+
+	// Counters of the last search.
+	int matchingCalls, failures;
+
+	// Matchings found so far, and candidates thrown away because their values were used.
+	long foundCount, rejected;
+
+	// Existence searches can use a memo (see exists). The last matching found is copied to take the witness from.
+	MatchMemo memo;
+	Map<QueryPlan, MemoLayout> layouts = new IdentityHashMap<>();
+	MemoLayout layout;
+	int[] lastFound;
+	boolean memoize;
+
+	// Per position in a plan: the slots bound before that the rest of the plan uses (the key) and the slots still
+	// unbound (the witness). Positions of different plans are different in the memo.
+	private static class MemoLayout {
+		int offset;
+		int[][] keySlots, freeSlots;
+	}
+
+	// Plans the searches used, when the visitor is reporting, and the estimated cost of the current search.
+	PlanReport report = new PlanReport();
+	// What the steps of the searches did, when the visitor is instrumented (counting). A search that stops early only
+	// counts at the step it stopped, not at the ones it goes back through (unwinding).
+	MatchStats stats = new MatchStats();
+	boolean counting, unwinding;
+
+	// What the searches can take, if bounded (see setBudget), when the current search started (and how many times it
+	// was checked).
+	MatchBudget budget;
+	long budgetStart, budgetChecks;
+	double estimated;
+	long searchStart;
+	BooleanSupplier anyFound = () -> foundCount > searchStart;
+
+	public Matcher(GraphVisitor visitor) {
+		super();
+		this.visitor = visitor;
+
+		slots = visitor.slots;
+		variables = new int[slots.size()];
+		slots.forEach((v, slot) -> variables[slot] = v);
+
+		values = new int[variables.length];
+		clear();
+	}
+
+	// The plan of the next searches, which must be a plan of the visitor.
+	public Matcher setPlan(QueryPlan plan) {
+		basePlan = plan;
+		baseEdges = visitor.getOrder(plan);
+
+		if (visitor.adaptive) {
+			alternatives = visitor.getAlternatives(plan);
+			alternativeOrders = alternatives.stream().map(visitor::getOrder).toList();
+		} else {
+			alternatives = List.of();
+			alternativeOrders = List.of();
+		}
+
+		return this;
+	}
+
+	public Matcher setPlan(Collection<Integer> groundedVariables) {
+		return setPlan(visitor.getPlan(groundedVariables));
+	}
+
+	public QueryPlan getPlan() {
+		return basePlan;
+	}
+
+	// Once the budget is gone, searches find nothing, and the ones going on stop as if they were done early. Null for
+	// no bound; a budget can be shared by the matchers of several threads.
+	public Matcher setBudget(MatchBudget budget) {
+		this.budget = budget;
+		return this;
+	}
+
+	public MatchBudget getBudget() {
+		return budget;
+	}
+
+	// Unbinds all the variables.
+	public Matcher clear() {
+		Arrays.fill(values, UNBOUND);
+		used.clear();
+		return this;
+	}
+
+	public Matcher bind(int variable, int value) {
+		values[slots.get(variable)] = value;
+		used.add(value);
+		return this;
+	}
+
+	public int get(int variable) {
+		return values[slots.get(variable)];
+	}
+
+	public boolean isBound(int variable) {
+		return get(variable) != UNBOUND;
+	}
+
+	// Whether the value is taken by some variable.
+	public boolean isUsed(int value) {
+		return used.contains(value);
+	}
+
+	// The values of the source and target of the i-th edge in the order.
+	public int getSource(int i) {
+		return values[plan.sources[i]];
+	}
+
+	public int getTarget(int i) {
+		return values[plan.targets[i]];
+	}
+
+	public int getMatchingCalls() {
+		return matchingCalls;
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+	public PlanReport getPlanReport() {
+		return report;
+	}
+
+	public MatchStats getMatchStats() {
+		return stats;
+	}
+
+	public LabeledEdge getEdge(int i) {
+		return edges.get(i);
+	}
+
+	// A copy of the current matching.
+	public Map<Integer, Integer> toMap() {
+		Map<Integer, Integer> ret = new HashMap<>();
+		for (int i = 0; i < variables.length; i++)
+			if (values[i] != UNBOUND)
+				ret.put(variables[i], values[i]);
+		return ret;
+	}
+
+	// Searches with exists remember what they found; capacity is the number of keys. The memo is forgotten here, so
+	// call it at the beginning of a visit: the data may have changed since the last one.
+	public Matcher setMemo(int capacity) {
+		if (memo == null || memo.getCapacity() != capacity)
+			memo = new MatchMemo(capacity);
+		memo.reset(values.length);
+		layouts.clear();
+		lastFound = new int[values.length];
+		return this;
+	}
+
+	public Matcher removeMemo() {
+		memo = null;
+		layouts.clear();
+		return this;
+	}
+
+	public MatchMemo getMemo() {
+		return memo;
+	}
+
+	// Whether there is a matching that extends the bound variables; found gets the first one, if any. With a memo and
+	// backtracking, the answer may come from a previous search, in which case so do the values of the unbound slots.
+	public boolean exists(MatchFound found) {
+		searchStart = foundCount;
+		search(found, anyFound, null, memo != null && visitor.engine == Engine.Backtracking);
+		return foundCount > searchStart;
+	}
+
+	// Finds matchings of the plan of the matcher that extend the bound variables, which must be the grounded
+	// variables of the plan. After each candidate of each edge (or variable), stopping is checked; the selector can be
+	// null. Selectors work on the candidates of edges, so they always use backtracking.
+	public void run(MatchFound found, BooleanSupplier stopping, CandidateSelector selector) {
+		search(found, stopping, selector, false);
+	}
+
+	private void search(MatchFound found, BooleanSupplier stopping, CandidateSelector selector, boolean memoize) {
+		this.found = found;
+		this.stopping = stopping;
+		this.selector = selector;
+
+		if (basePlan == null)
+			throw new RuntimeException("There is no plan to match!");
+
+		plan = basePlan;
+		edges = baseEdges;
+
+		for (int slot = 0; slot < values.length; slot++)
+			if (plan.isGrounded(slot) == (values[slot] == UNBOUND))
+				throw new RuntimeException("Variable " + variables[slot] + " must be "
+						+ (plan.isGrounded(slot) ? "bound" : "unbound") + " in plan: " + plan);
+
+		if (cursors.length < plan.size()) {
+			int previous = cursors.length;
+			cursors = Arrays.copyOf(cursors, plan.size());
+			for (int i = previous; i < plan.size(); i++)
+				cursors[i] = new PairCursor();
+		}
+
+		// Pick the cheapest plan for the grounded values, unless the candidates are selected.
+		boolean adapting = visitor.adaptive && selector == null && visitor.engine == Engine.Backtracking;
+		if (adapting)
+			choosePlan();
+		else if (visitor.reporting)
+			estimated = visitor.costs.estimate(plan, values);
+
+		this.memoize = memoize;
+		if (memoize)
+			layout = layouts.computeIfAbsent(plan, this::getLayout);
+
+		matchingCalls = 0;
+		failures = 0;
+
+		counting = visitor.instrumented;
+		unwinding = false;
+		if (counting)
+			stats.ensure(plan.size() + 1);
+
+		if (budget != null) {
+			if (budget.isExhausted())
+				return;
+
+			budgetStart = budget.startSearch();
+			budgetChecks = 0;
+			this.stopping = () -> stopping.getAsBoolean()
+					|| budget.check(matchingCalls, budgetStart, ++budgetChecks);
+		}
+
+		if (visitor.engine == Engine.Leapfrog && selector == null) {
+			if (leapfrog == null)
+				leapfrog = new LeapfrogJoin(this);
+			leapfrog.run();
+		} else
+			match(0);
+
+		if (budget != null)
+			budget.endSearch(matchingCalls, budgetStart);
+
+		if (visitor.reporting)
+			report.add(plan, estimated, matchingCalls);
+	}
+
+	// The cheapest of the alternatives of the plan of the matcher with the current values.
+	private void choosePlan() {
+		estimated = visitor.costs.estimate(plan, values);
+		if (alternatives.size() < 2 || alternatives.get(0) != plan)
+			return;
+
+		int best = 0;
+		double bestCost = estimated;
+		for (int i = 1; i < alternatives.size(); i++) {
+			double cost = visitor.costs.estimate(alternatives.get(i), values);
+			if (cost < bestCost) {
+				best = i;
+				bestCost = cost;
+			}
+		}
+
+		if (best > 0 && bestCost * ADAPTIVE_FACTOR < estimated) {
+			plan = alternatives.get(best);
+			edges = alternativeOrders.get(best);
+			estimated = bestCost;
+		}
+	}
+
+	private MemoLayout getLayout(QueryPlan plan) {
+		MemoLayout ret = new MemoLayout();
+		ret.offset = layouts.values().stream().mapToInt(l -> l.keySlots.length).sum();
+		ret.keySlots = new int[plan.size()][];
+		ret.freeSlots = new int[plan.size()][];
+
+		for (int i = 0; i < plan.size(); i++) {
+			MutableIntSet bound = IntSets.mutable.empty(), rest = IntSets.mutable.empty();
+
+			for (int slot = 0; slot < values.length; slot++)
+				if (plan.isGrounded(slot))
+					bound.add(slot);
+			for (int j = 0; j < i; j++)
+				bound.addAll(plan.sources[j], plan.targets[j]);
+			for (int j = i; j < plan.size(); j++)
+				rest.addAll(plan.sources[j], plan.targets[j]);
+
+			ret.keySlots[i] = bound.select(rest::contains).toSortedArray();
+			ret.freeSlots[i] = rest.reject(bound::contains).toSortedArray();
+		}
+
+		return ret;
+	}
+
+	void accept() {
+		foundCount++;
+		if (memoize)
+			System.arraycopy(values, 0, lastFound, 0, values.length);
+		found.accept(this);
+	}
+
+	private void match(int i) {
+		matchingCalls++;
+		if (counting)
+			stats.calls[i]++;
+
+		if (i == plan.size()) {
+			accept();
+			return;
+		}
+
+		// The first position only has the grounded values, so it is the same search as the whole; the memo is for
+		// the searches below, and only when there is something left to bind.
+		boolean memoized = memoize && i > 0 && layout.freeSlots[i].length > 0;
+		if (memoized) {
+			int entry = memo.lookup(layout.offset + i, values, layout.keySlots[i]);
+
+			if (entry >= 0 && !memo.isSuccess(entry)) {
+				failures++;
+				return;
+			}
+
+			if (entry >= 0 && isFree(entry, layout.freeSlots[i])) {
+				int[] free = layout.freeSlots[i];
+				for (int k = 0; k < free.length; k++)
+					values[free[k]] = memo.getWitness(entry, k);
+
+				accept();
+
+				for (int slot : free)
+					values[slot] = UNBOUND;
+				return;
+			}
+		}
+
+		long foundBefore = foundCount, rejectedBefore = rejected;
+		searchFrom(i);
+
+		// A search cut by the budget did not go over everything.
+		if (memoized && (budget == null || !budget.isExhausted()))
+			if (foundCount > foundBefore)
+				memo.put(layout.offset + i, values, layout.keySlots[i], true, lastFound, layout.freeSlots[i]);
+			else if (rejected == rejectedBefore)
+				memo.put(layout.offset + i, values, layout.keySlots[i], false, null, null);
+	}
+
+	// Whether the values of the witness of the entry are not taken.
+	private boolean isFree(int entry, int[] free) {
+		for (int k = 0; k < free.length; k++)
+			if (used.contains(memo.getWitness(entry, k)))
+				return false;
+		return true;
+	}
+
+	private void searchFrom(int i) {
+		int u = plan.sources[i], up = plan.targets[i];
+		QueryPlan.Access access = plan.access[i];
+
+		// The access path tells us which ends of the edge get values.
+		boolean replaceU = access == QueryPlan.Access.Scan || access == QueryPlan.Access.ObjectLookup,
+				replaceUp = access == QueryPlan.Access.Scan || access == QueryPlan.Access.SubjectLookup;
+
+		PairCursor pairs = visitor.toIterate(access, plan.predicates[i], values[u], values[up], cursors[i]);
+		if (selector != null)
+			pairs = selector.select(i, pairs, this);
+
+		int matches = 0;
+
+		while (pairs.next()) {
+			int v = pairs.subject(), vp = pairs.object();
+
+			if (counting)
+				stats.candidates[i]++;
+
+			// Injective function!
+			if ((replaceU && used.contains(v)) || (replaceUp && used.contains(vp))) {
+				rejected++;
+				if (counting)
+					stats.rejected[i]++;
+				continue;
+			}
+
+			matches++;
+
+			if (replaceU) {
+				values[u] = v;
+				used.add(v);
+			}
+			if (replaceUp) {
+				values[up] = vp;
+				used.add(vp);
+			}
+
+			match(i + 1);
+
+			if (replaceU) {
+				values[u] = UNBOUND;
+				used.remove(v);
+			}
+			if (replaceUp) {
+				values[up] = UNBOUND;
+				used.remove(vp);
+			}
+
+			// Check whether we are done early.
+			if (stopping.getAsBoolean()) {
+				if (counting && !unwinding) {
+					stats.stopped[i]++;
+					unwinding = true;
+				}
+				return;
+			}
+		}
+
+		if (matches == 0)
+			failures++;
+	}
+
+}
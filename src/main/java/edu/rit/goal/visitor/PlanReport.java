@@ -0,0 +1,65 @@
+package edu.rit.goal.visitor;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// The plans the matcher picked, and how the cost the model estimated compares with the calls each search took. The
+// q-error of a search is the factor between both (at least 1), so a mean close to 1 means that the model is right.
+public class PlanReport {
+	// Per plan: searches, estimated cost, actual cost and q-errors, added up.
+	Map<QueryPlan, double[]> plans = new IdentityHashMap<>();
+
+	public void add(QueryPlan plan, double estimated, long actual) {
+		double[] entry = plans.computeIfAbsent(plan, p -> new double[4]);
+		entry[0]++;
+		entry[1] += estimated;
+		entry[2] += actual;
+		entry[3] += getQError(estimated, actual);
+	}
+
+	public synchronized void merge(PlanReport other) {
+		other.plans.forEach((plan, entry) -> {
+			double[] mine = plans.computeIfAbsent(plan, p -> new double[4]);
+			for (int i = 0; i < entry.length; i++)
+				mine[i] += entry[i];
+		});
+	}
+
+	public void clear() {
+		plans.clear();
+	}
+
+	public long getSearches() {
+		return (long) plans.values().stream().mapToDouble(e -> e[0]).sum();
+	}
+
+	public double getEstimatedCost() {
+		return plans.values().stream().mapToDouble(e -> e[1]).sum();
+	}
+
+	public double getActualCost() {
+		return plans.values().stream().mapToDouble(e -> e[2]).sum();
+	}
+
+	public double getMeanQError() {
+		long searches = getSearches();
+		return searches == 0 ? 1 : plans.values().stream().mapToDouble(e -> e[3]).sum() / searches;
+	}
+
+	private static double getQError(double estimated, double actual) {
+		// Every search takes at least a call.
+		estimated = Math.max(1, estimated);
+		actual = Math.max(1, actual);
+		return Math.max(estimated / actual, actual / estimated);
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer ret = new StringBuffer();
+		plans.forEach((plan, e) -> ret.append(plan + " -- searches: " + (long) e[0] + "; estimated: "
+				+ String.format("%.1f", e[1]) + "; actual: " + (long) e[2] + "; mean q-error: "
+				+ String.format("%.2f", e[3] / e[0]) + "\n"));
+		return ret.toString();
+	}
+
+}
@@ -0,0 +1,142 @@
+package edu.rit.goal.visitor;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.jgrapht.graph.DirectedMultigraph;
+
+import edu.rit.goal.graph.LabeledEdge;
+
+// Compiled plan to match a rule when some of its variables are grounded: the order of the edges, how the candidates of
+// each edge are accessed and the slots of their variables. Slots are the ids of the variables in the signature of the
+// rule (0 and 1 are the head), so rules with the same signature share plans. Plans never change once compiled.
+public class QueryPlan {
+	public enum Access {
+		// No end of the edge has a value, a value for the subject, for the object, or both.
+		Scan, SubjectLookup, ObjectLookup, PairProbe
+	}
+
+	final int[] predicates, sources, targets;
+	final Access[] access;
+	final int variables;
+
+	// Slots that must have values before matching.
+	final int grounded;
+
+	// Estimated pairs of each edge per partial matching, and partial matchings in total, without the values of the
+	// grounded variables; see CostModel.
+	final double[] fanOuts;
+	final double cost;
+
+	QueryPlan(List<LabeledEdge> order, DirectedMultigraph<Integer, LabeledEdge> query, Map<Integer, Integer> slots,
+			Collection<Integer> groundedVariables, CostModel costs) {
+		super();
+
+		predicates = new int[order.size()];
+		sources = new int[order.size()];
+		targets = new int[order.size()];
+		access = new Access[order.size()];
+		fanOuts = new double[order.size()];
+		variables = slots.size();
+		grounded = getMask(groundedVariables, slots);
+
+		// The edge each slot gets its value from; grounded slots come from the first edge with both ends grounded, if any.
+		int[] from = new int[variables];
+		Arrays.fill(from, CostModel.NONE);
+
+		int bound = grounded;
+		for (int i = 0; i < order.size(); i++) {
+			LabeledEdge e = order.get(i);
+
+			predicates[i] = e.predicate;
+			sources[i] = slots.get(query.getEdgeSource(e));
+			targets[i] = slots.get(query.getEdgeTarget(e));
+
+			access[i] = getAccess((bound & 1 << sources[i]) != 0, (bound & 1 << targets[i]) != 0);
+			fanOuts[i] = costs.getFanOut(predicates[i], access[i], from[sources[i]], from[targets[i]]);
+
+			boolean both = isGrounded(sources[i]) && isGrounded(targets[i]);
+			if (from[sources[i]] == CostModel.NONE && (both || !isGrounded(sources[i])))
+				from[sources[i]] = CostModel.getFrom(predicates[i], true);
+			if (from[targets[i]] == CostModel.NONE && (both || !isGrounded(targets[i])))
+				from[targets[i]] = CostModel.getFrom(predicates[i], false);
+
+			bound |= 1 << sources[i] | 1 << targets[i];
+		}
+
+		cost = costs.estimate(this, null);
+	}
+
+	// Access path when the subject and/or the object have values.
+	public static Access getAccess(boolean subject, boolean object) {
+		if (subject && object)
+			return Access.PairProbe;
+		else if (subject)
+			return Access.SubjectLookup;
+		else if (object)
+			return Access.ObjectLookup;
+		else
+			return Access.Scan;
+	}
+
+	// Slots as bits; rules are way smaller than 32 variables.
+	static int getMask(Collection<Integer> variables, Map<Integer, Integer> slots) {
+		int mask = 0;
+		for (int v : variables)
+			mask |= 1 << slots.get(v);
+		return mask;
+	}
+
+	public int size() {
+		return predicates.length;
+	}
+
+	public int getPredicate(int i) {
+		return predicates[i];
+	}
+
+	public int getSource(int i) {
+		return sources[i];
+	}
+
+	public int getTarget(int i) {
+		return targets[i];
+	}
+
+	public Access getAccess(int i) {
+		return access[i];
+	}
+
+	public int getVariables() {
+		return variables;
+	}
+
+	public boolean isGrounded(int slot) {
+		return (grounded & 1 << slot) != 0;
+	}
+
+	// Whether the edges are the same and in the same order.
+	public boolean hasSameOrder(QueryPlan other) {
+		return Arrays.equals(predicates, other.predicates) && Arrays.equals(sources, other.sources)
+				&& Arrays.equals(targets, other.targets);
+	}
+
+	public double getFanOut(int i) {
+		return fanOuts[i];
+	}
+
+	public double getCost() {
+		return cost;
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer ret = new StringBuffer();
+		for (int i = 0; i < size(); i++)
+			ret.append((i > 0 ? ", " : "") + access[i] + "(" + sources[i] + "," + predicates[i] + "," + targets[i] + ")");
+		return ret.toString();
+	}
+
+}
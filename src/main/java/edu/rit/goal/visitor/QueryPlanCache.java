@@ -0,0 +1,98 @@
+package edu.rit.goal.visitor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import edu.rit.goal.graph.GraphDatabase;
+import edu.rit.goal.graph.GraphStatistics;
+import edu.rit.goal.graph.signature.SignatureAtom;
+
+// Sizes and plans of the rules that were visited in a view, by signature. Rules found again (e.g., by the random
+// walks) and the variants of the same rule for the PCA confidence reuse them. A view gets new statistics when its
+// indexes change, and so a new cache; the old one goes away with the old statistics.
+public class QueryPlanCache {
+	private static Map<GraphStatistics, QueryPlanCache> caches = new WeakHashMap<>();
+
+	public static synchronized QueryPlanCache of(GraphDatabase db) {
+		return caches.computeIfAbsent(db.getStatistics(), s -> new QueryPlanCache());
+	}
+
+	// Sizes of the edges (in the order of the signature) and of the variables (by slot).
+	static class Sizes {
+		int[] edges, variables;
+	}
+
+	static class Key {
+		List<SignatureAtom> signature;
+		// Whether the edge sizes are reduced with semi-joins.
+		boolean refined;
+		int grounded;
+		// The atom (in the order of the signature) that goes first after the grounded ones, if not the cheapest.
+		int first;
+
+		Key(SignatureAtom[] signature, boolean refined, int grounded) {
+			this(signature, refined, grounded, -1);
+		}
+
+		Key(SignatureAtom[] signature, boolean refined, int grounded, int first) {
+			super();
+			this.signature = Arrays.asList(signature);
+			this.refined = refined;
+			this.grounded = grounded;
+			this.first = first;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((signature.hashCode() * 31 + Boolean.hashCode(refined)) * 31 + grounded) * 31 + first;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return refined == other.refined && grounded == other.grounded && first == other.first
+					&& signature.equals(other.signature);
+		}
+	}
+
+	Map<Key, Sizes> sizes = new ConcurrentHashMap<>();
+	Map<Key, QueryPlan> plans = new ConcurrentHashMap<>();
+	// Degrees sampled by the cost models of the view.
+	Map<Long, double[]> samples = new ConcurrentHashMap<>();
+	// Subjects (2 * p) and objects (2 * p + 1) of the predicates with pairs in the view.
+	Map<Integer, CandidateSet> entities = new ConcurrentHashMap<>();
+
+	Sizes getSizes(Key key, Supplier<Sizes> compute) {
+		// Compute outside of the map; two threads may compute the same sizes, but that is harmless.
+		Sizes ret = sizes.get(key);
+		if (ret == null) {
+			Sizes previous = sizes.putIfAbsent(key, ret = compute.get());
+			if (previous != null)
+				ret = previous;
+		}
+		return ret;
+	}
+
+	QueryPlan getPlan(Key key, Supplier<QueryPlan> compile) {
+		QueryPlan ret = plans.get(key);
+		if (ret == null) {
+			QueryPlan previous = plans.putIfAbsent(key, ret = compile.get());
+			if (previous != null)
+				ret = previous;
+		}
+		return ret;
+	}
+
+	public int size() {
+		return plans.size();
+	}
+
+}
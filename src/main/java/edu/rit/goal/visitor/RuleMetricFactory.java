@@ -1,14 +1,16 @@
 package edu.rit.goal.visitor;
 
-import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
 
 import edu.rit.goal.estimator.EstimatorMemento;
 import edu.rit.goal.estimator.Sampling;
 import edu.rit.goal.visitor.confidence.EstimatedPCAConfidenceVisitor;
 import edu.rit.goal.visitor.confidence.EstimatedPCAConfidenceVisitor.SampleSelection;
 import edu.rit.goal.visitor.confidence.ExactPCAConfidenceVisitor;
+import edu.rit.goal.visitor.support.ChainSupportVisitor;
 import edu.rit.goal.visitor.support.EstimatedSupportVisitor;
 import edu.rit.goal.visitor.support.ExactSupportVisitor;
+import edu.rit.goal.visitor.support.MatchCountVisitor;
 
 public class RuleMetricFactory {
 	public static ExactSupportVisitor getExactSupport(GraphVisitor visitor) {
@@ -17,8 +19,29 @@ public class RuleMetricFactory {
 		return new ExactSupportVisitor(visitor, x, y);
 	}
 
+	// The head pairs are visited in parallel in the pool.
+	public static ExactSupportVisitor getExactSupport(GraphVisitor visitor, ForkJoinPool pool) {
+		int x = visitor.query.getEdgeSource(visitor.head), y = visitor.query.getEdgeTarget(visitor.head);
+
+		return new ExactSupportVisitor(visitor, x, y, pool);
+	}
+
+	// Set at a time; only for chain rules, see ChainSupportVisitor.isChain.
+	public static ChainSupportVisitor getChainSupport(GraphVisitor visitor) {
+		int x = visitor.query.getEdgeSource(visitor.head), y = visitor.query.getEdgeTarget(visitor.head);
+
+		return new ChainSupportVisitor(visitor, x, y);
+	}
+
+	// Matchings of each head pair; only for tree rules, see MatchCountVisitor.isTree.
+	public static MatchCountVisitor getMatchCount(GraphVisitor visitor) {
+		int x = visitor.query.getEdgeSource(visitor.head), y = visitor.query.getEdgeTarget(visitor.head);
+
+		return new MatchCountVisitor(visitor, x, y);
+	}
+
 	public static EstimatedSupportVisitor getEstimatedSupport(GraphVisitor visitor, EstimatorMemento memento,
-			Sampling<Entry<Integer, Integer>> sampling) {
+			Sampling<Integer> sampling) {
 		int x = visitor.query.getEdgeSource(visitor.head), y = visitor.query.getEdgeTarget(visitor.head);
 
 		return new EstimatedSupportVisitor(visitor, memento, x, y, sampling);
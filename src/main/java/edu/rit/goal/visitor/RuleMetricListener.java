@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import edu.rit.goal.metric.RuleMatchCount;
 import edu.rit.goal.metric.RuleMetric;
 import edu.rit.goal.metric.RulePCAConfidence;
 import edu.rit.goal.metric.RuleSupport;
@@ -56,7 +57,16 @@ public abstract class RuleMetricListener {
 		}
 	}
 
-	public void updateCalls(int calls) {
+	// Only metrics that keep the matchings of each head pair take these.
+	public void addMatchCount(int s, int o, long count) {
+		if (stopCollection)
+			return;
+
+		if (metric instanceof RuleMatchCount)
+			((RuleMatchCount) metric).addCount(s, o, count);
+	}
+
+	public void updateCalls(long calls) {
 		if (stopCollection)
 			return;
 
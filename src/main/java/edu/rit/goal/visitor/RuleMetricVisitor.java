@@ -1,8 +1,8 @@
 package edu.rit.goal.visitor;
 
 import java.lang.management.ManagementFactory;
-import java.math.BigDecimal;
-import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
@@ -12,6 +12,10 @@ public abstract class RuleMetricVisitor {
 
 	protected final int x, y;
 
+	// The matcher of the computations: its plan, memo, budget and counters are only for this visitor, which is used by
+	// a single thread.
+	protected final Matcher matcher;
+
 	public RuleMetricVisitor(GraphVisitor visitor, int x, int y) {
 		super();
 
@@ -19,32 +23,96 @@ public abstract class RuleMetricVisitor {
 
 		this.x = x;
 		this.y = y;
+
+		this.matcher = visitor.newMatcher();
 	}
 
 	protected final AtomicLong startingTime = new AtomicLong(), endingTime = new AtomicLong();
 
+	// What a visit can take, if bounded (see MatchBudget). A visit that runs out of it ends with what it has, and the
+	// metrics of the listeners are flagged as truncated; exact metrics are then lower bounds.
+	protected MatchBudget budget;
+
+	public void setBudget(MatchBudget budget) {
+		this.budget = budget;
+	}
+
+	public MatchBudget getBudget() {
+		return budget;
+	}
+
+	protected final void startBudget() {
+		if (budget != null)
+			budget.start();
+		matcher.setBudget(budget);
+	}
+
+	protected final boolean isOutOfBudget() {
+		return budget != null && budget.isExhausted();
+	}
+
+	protected final void endBudget(Collection<RuleMetricListener> listeners) {
+		if (isOutOfBudget())
+			listeners.forEach(l -> l.getMetric().setTruncated(true));
+	}
+
+	// Visits that do not go through the matcher spend the budget as a single search of the given calls.
+	protected final long startSearch() {
+		return budget == null ? 0 : budget.startSearch();
+	}
+
+	protected final boolean checkBudget(long calls, long start, long checks) {
+		return budget != null && budget.check(calls, start, checks);
+	}
+
+	protected final void endSearch(long calls, long start) {
+		if (budget != null)
+			budget.endSearch(calls, start);
+	}
+
+	// The report and the stats of the matcher are cleared before a computation and then added to the ones of the
+	// visitor; if the visitor is instrumented, the stats are also added to the metrics of the listeners, so they go next
+	// to the calls and the CPU time.
+	protected final void clearStats() {
+		matcher.getPlanReport().clear();
+		matcher.getMatchStats().clear();
+	}
+
+	protected final void reportStats(Collection<RuleMetricListener> listeners) {
+		visitor.addReports(matcher);
+
+		if (visitor.isInstrumented()) {
+			Map<String, Object> steps = Map.of("Steps", matcher.getMatchStats().toString());
+			listeners.forEach(l -> l.getMetric().addExtraStuff(steps));
+		}
+	}
+
 	protected final void getTime(AtomicLong t) {
-		t.set(ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime());
+		t.set(getCpuTime());
 	}
 
-	protected final BigDecimal getProbability(Map<Integer, Integer> matching, Integer selected, Integer notSelected) {
-		// Correct probability. Original from the WSDM paper.
-		// TODO Remove if this works better.
-//		BigDecimal probabilityXAndY = visitor.getProbability(matching, Map.of(x, s, y, o));
-//		return probability.divide(probabilityOfRest, MathContext.DECIMAL128);
+	// CPU time of the current thread.
+	protected static long getCpuTime() {
+		return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+	}
 
-		Integer selectedSize = null;
+	// The terms of the probability of the matching (see EstimatorMemento.newSuccess): the sizes it is the product of,
+	// and the size it is divided by. They are only computed if some estimator needs them (null otherwise), since it is
+	// not cheap.
+	protected final int[] getProbabilityTerms(Collection<RuleMetricListener> listeners, Map<Integer, Integer> matching,
+			Integer selected, Integer notSelected) {
+		if (!listeners.stream().anyMatch(l -> ((EstimatedRuleMetricListener) l).getEstimator().requiresProbability()))
+			return null;
+
+		int selectedSize = 1;
 
 		// Selected is the variable we started the search from, if any.
 		if (selected != null)
 			// Let's find out the candidates of selected.
-			selectedSize = visitor.getVariableCandidates(selected, matching).size();
-
-		BigDecimal probability = visitor.getProbability(matching, Set.of());
-
-		if (selectedSize != null)
-			probability = probability.divide(new BigDecimal(selectedSize), MathContext.DECIMAL128);
+			selectedSize = visitor.getCandidates(selected, matching).size();
 
-		return probability;
+		int[] costs = visitor.getProbabilityCosts(matching, Set.of()), ret = Arrays.copyOf(costs, costs.length + 1);
+		ret[costs.length] = selectedSize;
+		return ret;
 	}
 }
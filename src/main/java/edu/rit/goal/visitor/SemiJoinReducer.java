@@ -0,0 +1,135 @@
+package edu.rit.goal.visitor;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.jgrapht.graph.DirectedMultigraph;
+
+import edu.rit.goal.graph.GraphDatabase;
+import edu.rit.goal.graph.LabeledEdge;
+import edu.rit.goal.graph.index.PairCursor;
+import edu.rit.goal.graph.index.PredicateIndex;
+
+// Semi-join reduction (the first pass of Yannakakis) of the candidates of the variables of a query. The candidates of a
+// variable start as the entities in its position of all its edges, and then each edge keeps the candidates of its ends
+// that have a pair with the other end among the candidates, until nothing changes. Whatever is left out cannot be in
+// a matching, so the sizes of the edges (their pairs between candidates) are upper bounds of what the matcher can find.
+// Candidates are bitsets of entities; in each round, the edges are reduced in parallel from the same candidates.
+public class SemiJoinReducer {
+	GraphDatabase db;
+	DirectedMultigraph<Integer, LabeledEdge> query;
+
+	Map<Integer, BitSet> candidates = new HashMap<>();
+	Map<LabeledEdge, Integer> sizes = new HashMap<>();
+	int rounds;
+
+	// The ends of an edge with pairs between candidates, and how many pairs.
+	private static class Reduction {
+		BitSet sources = new BitSet(), targets = new BitSet();
+		int size;
+	}
+
+	public SemiJoinReducer(GraphDatabase db, DirectedMultigraph<Integer, LabeledEdge> query) {
+		super();
+		this.db = db;
+		this.query = query;
+	}
+
+	public SemiJoinReducer reduce() {
+		for (LabeledEdge e : query.edgeSet()) {
+			PredicateIndex index = db.getIndex(e.predicate);
+
+			intersect(query.getEdgeSource(e), getEntities(index, true));
+			intersect(query.getEdgeTarget(e), getEntities(index, false));
+		}
+
+		boolean changed = true;
+		while (changed) {
+			rounds++;
+
+			Map<LabeledEdge, Reduction> reductions = query.edgeSet().parallelStream()
+					.collect(Collectors.toMap(Function.identity(), this::reduce));
+
+			changed = false;
+			for (LabeledEdge e : query.edgeSet()) {
+				Reduction r = reductions.get(e);
+
+				changed |= intersect(query.getEdgeSource(e), r.sources);
+				changed |= intersect(query.getEdgeTarget(e), r.targets);
+
+				sizes.put(e, r.size);
+			}
+		}
+
+		return this;
+	}
+
+	public BitSet getCandidates(int v) {
+		return candidates.get(v);
+	}
+
+	public int getSize(LabeledEdge e) {
+		return sizes.get(e);
+	}
+
+	public int getRounds() {
+		return rounds;
+	}
+
+	// Whether the candidates of v changed.
+	private boolean intersect(int v, BitSet other) {
+		BitSet current = candidates.get(v);
+
+		if (current == null) {
+			candidates.put(v, (BitSet) other.clone());
+			return true;
+		}
+
+		int before = current.cardinality();
+		current.and(other);
+		return current.cardinality() != before;
+	}
+
+	// The subjects (objects) with pairs in the view.
+	private static BitSet getEntities(PredicateIndex index, boolean subjects) {
+		BitSet ret = new BitSet();
+
+		if (index != null)
+			for (int row = 0; row < (subjects ? index.getSubjectCount() : index.getObjectCount()); row++)
+				if ((subjects ? index.getSubjectRowDegree(row) : index.getObjectRowDegree(row)) > 0)
+					ret.set(subjects ? index.getSubject(row) : index.getObject(row));
+
+		return ret;
+	}
+
+	// Only reads the candidates, so edges can be reduced at the same time.
+	private Reduction reduce(LabeledEdge e) {
+		int u = query.getEdgeSource(e), up = query.getEdgeTarget(e);
+		BitSet sources = candidates.get(u), targets = candidates.get(up);
+
+		Reduction ret = new Reduction();
+		PairCursor cursor = new PairCursor();
+
+		for (int s = sources.nextSetBit(0); s >= 0; s = sources.nextSetBit(s + 1)) {
+			db.getCandidatesBySubject(e.predicate, s, cursor);
+
+			while (cursor.next()) {
+				int o = cursor.object();
+
+				// A self-loop needs the same entity at both ends. Grounded variables can share values, so other edges do
+				// not need different ones.
+				if (targets.get(o) && (u != up || s == o)) {
+					ret.sources.set(s);
+					ret.targets.set(o);
+					ret.size++;
+				}
+			}
+		}
+
+		return ret;
+	}
+
+}
@@ -1,33 +1,25 @@
 package edu.rit.goal.visitor.confidence;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.BiFunction;
-import java.util.function.Consumer;
-import java.util.function.Predicate;
+import java.util.function.BooleanSupplier;
 
-import org.eclipse.collections.api.factory.Lists;
 import org.eclipse.collections.api.factory.primitive.IntSets;
-import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
 
 import edu.rit.goal.estimator.Estimator;
 import edu.rit.goal.estimator.EstimatorMemento;
 import edu.rit.goal.estimator.ProbabilityEstimator;
 import edu.rit.goal.estimator.Sampling;
-import edu.rit.goal.graph.LabeledEdge;
 import edu.rit.goal.metric.RulePCAConfidence;
 import edu.rit.goal.visitor.EstimatedRuleMetricListener;
 import edu.rit.goal.visitor.GraphVisitor;
+import edu.rit.goal.visitor.Matcher;
+import edu.rit.goal.visitor.QueryPlan;
 
 public class EstimatedPCAConfidenceVisitor extends PCAConfidenceVisitor {
 	private static final int MAX_MATCHING_CALLS = 100000;
@@ -58,49 +50,48 @@ public class EstimatedPCAConfidenceVisitor extends PCAConfidenceVisitor {
 		this.beamSearch = beamSearch;
 	}
 
-	@SuppressWarnings("unchecked")
-	BiFunction<LabeledEdge, Map<Integer, Integer>, MutableList<Entry<Integer, Integer>>> toIterate() {
-		return (e, pm) -> {
-			MutableList<Entry<Integer, Integer>> it = visitor.toIterate(e, pm);
+	// Reused to pick candidates at random.
+	MutableIntSet visited = IntSets.mutable.empty();
 
+	// In beam search, we keep a single random candidate per edge.
+	Matcher.CandidateSelector beamSelector() {
+		return (i, it, matcher) -> {
 			// Get random element.
-			if (beamSearch && !it.isEmpty()) {
-				MutableIntSet visited = IntSets.mutable.empty();
-				Set<Integer> values = new HashSet<>(pm.values());
+			if (!it.isEmpty()) {
+				visited.clear();
 
 				// A value that is already in the mapping can show up. Let's avoid that.
-				int u = visitor.query.getEdgeSource(e), up = visitor.query.getEdgeTarget(e);
-
-				boolean checkU = !pm.containsKey(u), checkUp = !pm.containsKey(up);
+				boolean checkU = matcher.getSource(i) == Matcher.UNBOUND,
+						checkUp = matcher.getTarget(i) == Matcher.UNBOUND;
 
 				// Keep visiting until finding the one.
 				while (visited.size() < it.size()) {
 					int idx = ThreadLocalRandom.current().nextInt(it.size());
-					Entry<Integer, Integer> selected = it.get(idx);
+					int s = it.getSubject(idx), o = it.getObject(idx);
 
 					if (!visited.contains(idx)) {
 						visited.add(idx);
 
 						if (!checkU && !checkUp) {
-							return Lists.mutable.of(selected);
+							return it.single(s, o);
 						} else if ((checkU && !checkUp) || (!checkU && checkUp)) {
-							if (checkU && !values.contains(selected.getKey()))
-								return Lists.mutable.of(selected);
+							if (checkU && !matcher.isUsed(s))
+								return it.single(s, o);
 
-							if (checkUp && !values.contains(selected.getValue()))
-								return Lists.mutable.of(selected);
+							if (checkUp && !matcher.isUsed(o))
+								return it.single(s, o);
 						}
 					}
 				}
 
-				return Lists.mutable.empty();
+				return it.clear();
 			}
 
 			return it;
 		};
 	}
 
-	List<LabeledEdge> xOrder, yOrder, order;
+	QueryPlan xPlan, yPlan, plan;
 
 	// Whether x is selected based on the choice; otherwise, select y.
 	boolean selectX() {
@@ -125,58 +116,55 @@ public class EstimatedPCAConfidenceVisitor extends PCAConfidenceVisitor {
 			getTime(startingTime);
 
 			// Add to the partial matching.
-			Map<Integer, Integer> partialMatching = new HashMap<>();
+			matcher.clear();
 
 			other.set(-1);
 
 			Map<Integer, Integer> found = new HashMap<>();
 
-			Predicate<Void> earlyStopping = a -> {
-				return !found.isEmpty();
-			};
+			BooleanSupplier earlyStopping = () -> !found.isEmpty();
 
 			if (beamSearch) {
 				// Choose one variable to sample based on the choice.
 				if (selectX()) {
-					partialMatching.put(x, samplingX.getNext());
+					matcher.bind(x, samplingX.getNext());
 
 					selected.set(x);
 					other.set(y);
 
-					visitor.order = xOrder;
+					matcher.setPlan(xPlan);
 				} else {
-					partialMatching.put(y, samplingY.getNext());
+					matcher.bind(y, samplingY.getNext());
 
 					selected.set(y);
 					other.set(x);
 
-					visitor.order = yOrder;
+					matcher.setPlan(yPlan);
 				}
 			} else {
-				partialMatching.put(x, samplingX.getNext());
-				partialMatching.put(y, samplingY.getNext());
-				visitor.order = order;
+				matcher.bind(x, samplingX.getNext()).bind(y, samplingY.getNext());
+				matcher.setPlan(plan);
 
-				earlyStopping = earlyStopping.or(a -> {
-					return visitor.matchingCalls.intValue() >= MAX_MATCHING_CALLS;
-				});
+				earlyStopping = () -> !found.isEmpty() || matcher.getMatchingCalls() >= MAX_MATCHING_CALLS;
 			}
 
-			Consumer<Map<Integer, Integer>> matchingFound = matching -> {
+			Matcher.MatchFound matchingFound = m -> {
+				int s = m.get(x), o = m.get(y);
+
 				// Make sure it does not exist.
-				if (!visitor.isInHeadCandidates(matching.get(x), matching.get(y)))
-					found.putAll(matching);
+				if (!visitor.isInHeadCandidates(s, o))
+					found.putAll(m.toMap());
 				else
 					listeners.stream().forEach(l -> {
 						if (!((EstimatedRuleMetricListener) l).stop()) {
 							RulePCAConfidence conf = (RulePCAConfidence) ((EstimatedRuleMetricListener) l).getMetric();
-							conf.gatherPositive(matching.get(x), matching.get(y));
+							conf.gatherPositive(s, o);
 						}
 					});
 			};
 
-			if (beamSearch || !visitor.isInHeadCandidates(partialMatching.get(x), partialMatching.get(y)))
-				visitor.matching(0, partialMatching, matchingFound, toIterate(), earlyStopping);
+			if (beamSearch || !visitor.isInHeadCandidates(matcher.get(x), matcher.get(y)))
+				matcher.run(matchingFound, earlyStopping, beamSearch ? beamSelector() : null);
 
 			getTime(endingTime);
 
@@ -196,7 +184,7 @@ public class EstimatedPCAConfidenceVisitor extends PCAConfidenceVisitor {
 
 			updateCalls();
 
-			boolean stop = stopVisiting();
+			boolean stop = stopVisiting() || isOutOfBudget();
 
 			if (stop)
 				// We are done!
@@ -208,26 +196,13 @@ public class EstimatedPCAConfidenceVisitor extends PCAConfidenceVisitor {
 	public void initVisit() {
 		getTime(startingTime);
 
-		Set<Integer> groundedVariables = new HashSet<>();
-
 		if (beamSearch) {
 			// We will ground either x or y.
-			groundedVariables.add(x);
-			visitor.getOrder(groundedVariables);
-			xOrder = new ArrayList<>(visitor.order);
-
-			groundedVariables.clear();
-			groundedVariables.add(y);
-			visitor.getOrder(groundedVariables);
-			yOrder = new ArrayList<>(visitor.order);
-		} else {
+			xPlan = visitor.getPlan(Set.of(x));
+			yPlan = visitor.getPlan(Set.of(y));
+		} else
 			// We will ground both x and y.
-			groundedVariables.add(x);
-			groundedVariables.add(y);
-
-			visitor.getOrder(groundedVariables);
-			order = new ArrayList<>(visitor.order);
-		}
+			plan = visitor.getPlan(Set.of(x, y));
 
 		samplingX.init(xCandidates.collect(x -> x));
 
@@ -256,7 +231,7 @@ public class EstimatedPCAConfidenceVisitor extends PCAConfidenceVisitor {
 
 		int s = matching.get(x), o = matching.get(y);
 
-		BigDecimal probability = getProbability(matching, selected.get(), other.get());
+		int[] probability = getProbabilityTerms(listeners, matching, selected.get(), other.get());
 
 		getTime(endingTime);
 
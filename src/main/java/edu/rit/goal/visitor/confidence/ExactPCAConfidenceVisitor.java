@@ -1,11 +1,7 @@
 package edu.rit.goal.visitor.confidence;
 
 import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
 
 import edu.rit.goal.visitor.GraphVisitor;
 
@@ -17,7 +13,7 @@ public class ExactPCAConfidenceVisitor extends PCAConfidenceVisitor {
 	@Override
 	public void initVisit() {
 		getTime(startingTime);
-		visitor.getOrder(Set.of(x, y));
+		matcher.setPlan(Set.of(x, y));
 		getTime(endingTime);
 
 		this.listeners.forEach(l -> l.addToTimeElapsed(startingTime, endingTime));
@@ -25,26 +21,21 @@ public class ExactPCAConfidenceVisitor extends PCAConfidenceVisitor {
 
 	@Override
 	public void visit() {
-		xCandidates.forEach(s -> {
-			yCandidates.forEach(o -> {
+		// All the pairs share a subject or an object with many others, so searches repeat; the memo remembers them.
+		visitor.withMemo(matcher);
+
+		for (int i = 0; i < xCandidates.size() && !isOutOfBudget(); i++)
+			for (int j = 0; j < yCandidates.size() && !isOutOfBudget(); j++) {
+				int s = xCandidates.get(i), o = yCandidates.get(j);
+
 				getTime(startingTime);
 
-				AtomicInteger oneFound = new AtomicInteger();
+				boolean found = false;
 
 				// It cannot be in the search space (then, it is positive).
 				if (!visitor.isInHeadCandidates(s, o)) {
 					// Add s and o to the partial matching.
-					Map<Integer, Integer> partialMatching = new HashMap<>();
-
-					partialMatching.put(x, s);
-					partialMatching.put(y, o);
-
-					Consumer<Map<Integer, Integer>> matchingFound = matching -> {
-						oneFound.incrementAndGet();
-					};
-
-					visitor.matching(0, partialMatching, matchingFound, visitor::toIterate, a -> {
-						return oneFound.get() > 0;
+					found = matcher.clear().bind(x, s).bind(y, o).exists(m -> {
 					});
 				}
 
@@ -54,7 +45,7 @@ public class ExactPCAConfidenceVisitor extends PCAConfidenceVisitor {
 
 				updateCalls();
 
-				if (oneFound.get() > 0)
+				if (found)
 					listeners.stream().forEach(l -> {
 						getTime(startingTime);
 						l.incrementMetric(BigDecimal.ONE);
@@ -62,8 +53,7 @@ public class ExactPCAConfidenceVisitor extends PCAConfidenceVisitor {
 
 						l.addToTimeElapsed(startingTime, endingTime);
 					});
-			});
-		});
+			}
 	}
 
 	@Override
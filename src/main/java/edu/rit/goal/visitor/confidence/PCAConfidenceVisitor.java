@@ -3,7 +3,6 @@ package edu.rit.goal.visitor.confidence;
 import java.math.BigInteger;
 import java.util.Collection;
 
-import org.eclipse.collections.api.factory.primitive.IntLists;
 import org.eclipse.collections.api.list.primitive.MutableIntList;
 
 import edu.rit.goal.visitor.GraphVisitor;
@@ -27,13 +26,15 @@ public abstract class PCAConfidenceVisitor extends RuleMetricVisitor {
 
 		// We are starting!
 		this.listeners.forEach(l -> l.reset());
+		clearStats();
+		startBudget();
 
 		{
 			// Pre-visit.
 			getTime(startingTime);
 
-			xCandidates = IntLists.mutable.ofAll(visitor.getVariableCandidates(x));
-			yCandidates = IntLists.mutable.ofAll(visitor.getVariableCandidates(y));
+			xCandidates = visitor.getCandidates(x).toList();
+			yCandidates = visitor.getCandidates(y).toList();
 
 			// Let's shuffle them!
 			xCandidates.shuffleThis();
@@ -51,6 +52,9 @@ public abstract class PCAConfidenceVisitor extends RuleMetricVisitor {
 		visit();
 
 		endVisit();
+
+		reportStats(listeners);
+		endBudget(listeners);
 	}
 
 	public abstract void initVisit();
@@ -60,7 +64,7 @@ public abstract class PCAConfidenceVisitor extends RuleMetricVisitor {
 	public abstract void visit();
 
 	public void updateCalls() {
-		this.listeners.forEach(l -> l.updateCalls(visitor.matchingCalls.get()));
+		this.listeners.forEach(l -> l.updateCalls(matcher.getMatchingCalls()));
 	}
 
 }
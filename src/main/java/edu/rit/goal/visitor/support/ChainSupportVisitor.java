@@ -0,0 +1,162 @@
+package edu.rit.goal.visitor.support;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+
+import org.eclipse.collections.api.factory.primitive.IntLists;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.jgrapht.graph.DirectedMultigraph;
+
+import edu.rit.goal.graph.GraphDatabase;
+import edu.rit.goal.graph.LabeledEdge;
+import edu.rit.goal.graph.index.PairCursor;
+import edu.rit.goal.visitor.GraphVisitor;
+
+// Exact support of chain rules, p(x, y) <= q(x, z) r(z, y), where each body atom can go either way. The support is the
+// number of pairs of p that are also in the composition of q and r, so, instead of a search per head pair, we compute
+// the row of the composition (a sparse boolean matrix product) for each subject x of p in a bitset and count the
+// objects of x that are in it. Like in the matcher, z must be different from x and y.
+public class ChainSupportVisitor extends ExactSupportVisitor {
+	// The body atom with x and the one with y, and whether x (z) is their subject.
+	int first, second;
+	boolean xIsSubject, zIsSubject;
+
+	public ChainSupportVisitor(GraphVisitor visitor, int x, int y) {
+		super(visitor, x, y);
+
+		if (!isChain(visitor))
+			throw new RuntimeException("Not a chain rule: " + visitor.query);
+
+		DirectedMultigraph<Integer, LabeledEdge> query = visitor.query;
+
+		for (LabeledEdge e : query.edgeSet())
+			if (e != visitor.head) {
+				int u = query.getEdgeSource(e), up = query.getEdgeTarget(e);
+
+				if (u == x || up == x) {
+					first = e.predicate;
+					xIsSubject = u == x;
+				} else {
+					second = e.predicate;
+					zIsSubject = up == y;
+				}
+			}
+	}
+
+	// Whether the query is p(x, y) plus an atom between x and z and another between z and y, in any direction.
+	public static boolean isChain(GraphVisitor visitor) {
+		DirectedMultigraph<Integer, LabeledEdge> query = visitor.query;
+
+		if (visitor.head == null || query.edgeSet().size() != 3 || query.vertexSet().size() != 3)
+			return false;
+
+		int x = query.getEdgeSource(visitor.head), y = query.getEdgeTarget(visitor.head);
+		if (x == y)
+			return false;
+
+		int withX = 0, withY = 0;
+		for (LabeledEdge e : query.edgeSet())
+			if (e != visitor.head) {
+				int u = query.getEdgeSource(e), up = query.getEdgeTarget(e);
+
+				// No self-loops, and each atom has exactly one of x and y.
+				if (u == up)
+					return false;
+				if ((u == x || up == x) && u != y && up != y)
+					withX++;
+				if ((u == y || up == y) && u != x && up != x)
+					withY++;
+			}
+
+		return withX == 1 && withY == 1;
+	}
+
+	@Override
+	protected void visit() {
+		getTime(startingTime);
+
+		if (previousMatching != null)
+			newSuccess(previousMatching);
+
+		GraphDatabase db = visitor.getDb();
+
+		PairCursor zs = new PairCursor(), ys = new PairCursor();
+
+		// The row of the composition of the current subject, and its set bits, to clear them.
+		BitSet reached = new BitSet();
+		MutableIntList touched = IntLists.mutable.empty();
+
+		long support = 0, work = 0, start = startSearch(), checks = 0;
+		int current = -1, i = 0;
+
+		// The viable pairs of the head come grouped by subject.
+		for (; i < viablePairs.size(); i++) {
+			int position = viablePairs.get(i), s = candidatePairs.getSubject(position),
+					o = candidatePairs.getObject(position);
+
+			if (s != current) {
+				// The pairs gone over are the calls of the budget.
+				if (checkBudget(work, start, ++checks))
+					break;
+
+				touched.forEach(reached::clear);
+				touched.clear();
+				current = s;
+
+				work += reach(db, s, zs, ys, reached, touched);
+			}
+
+			if (reached.get(o))
+				support++;
+		}
+
+		totalVisited = i;
+		endSearch(work, start);
+
+		getTime(endingTime);
+
+		// The pairs gone over are the calls, as there are no searches.
+		long found = support, calls = work;
+		listeners.forEach(l -> {
+			l.addToTimeElapsed(startingTime, endingTime);
+			l.incrementMetric(BigDecimal.valueOf(found));
+			l.updateCalls(calls);
+		});
+	}
+
+	// Sets the entities y such that q(s, z) and r(z, y) for some z that is neither s nor y; returns the pairs gone over.
+	private long reach(GraphDatabase db, int s, PairCursor zs, PairCursor ys, BitSet reached, MutableIntList touched) {
+		if (xIsSubject)
+			db.getCandidatesBySubject(first, s, zs);
+		else
+			db.getCandidatesByObject(first, s, zs);
+
+		long ret = zs.size();
+
+		while (zs.next()) {
+			int z = xIsSubject ? zs.object() : zs.subject();
+
+			if (z == s)
+				continue;
+
+			if (zIsSubject)
+				db.getCandidatesBySubject(second, z, ys);
+			else
+				db.getCandidatesByObject(second, z, ys);
+
+			ret += ys.size();
+
+			while (ys.next()) {
+				int y = zIsSubject ? ys.object() : ys.subject();
+
+				if (y != z && !reached.get(y)) {
+					reached.set(y);
+					touched.add(y);
+				}
+			}
+		}
+
+		return ret;
+	}
+
+}
@@ -1,9 +1,7 @@
 package edu.rit.goal.visitor.support;
 
-import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicLong;
 
 import edu.rit.goal.estimator.EstimatorMemento;
@@ -15,7 +13,7 @@ public class EstimatedSupportVisitor extends SupportVisitor {
 	protected EstimatorMemento memento;
 
 	public EstimatedSupportVisitor(GraphVisitor visitor, EstimatorMemento memento, int x, int y,
-			Sampling<Entry<Integer, Integer>> sampling) {
+			Sampling<Integer> sampling) {
 		super(visitor, x, y, sampling);
 		this.memento = memento;
 	}
@@ -26,7 +24,7 @@ public class EstimatedSupportVisitor extends SupportVisitor {
 
 		listeners.stream().forEach(l -> {
 			getTime(startingTime);
-			((EstimatedRuleMetricListener) l).resetEstimator(BigInteger.valueOf(candidatePairs.size()));
+			((EstimatedRuleMetricListener) l).resetEstimator(BigInteger.valueOf(viablePairs.size()));
 			getTime(endingTime);
 
 			l.addToTimeElapsed(startingTime, endingTime);
@@ -35,6 +33,10 @@ public class EstimatedSupportVisitor extends SupportVisitor {
 
 	@Override
 	public void endVisit() {
+		// Nothing was sampled and the support is zero.
+		if (viablePairs.isEmpty())
+			return;
+
 		listeners.forEach(l -> {
 			getTime(startingTime);
 			((EstimatedRuleMetricListener) l).setMetric("");
@@ -52,7 +54,7 @@ public class EstimatedSupportVisitor extends SupportVisitor {
 		// New success.
 		int s = matching.get(x), o = matching.get(y);
 
-		BigDecimal probability = getProbability(matching, null, null);
+		int[] probability = getProbabilityTerms(listeners, matching, null, null);
 
 		getTime(endingTime);
 
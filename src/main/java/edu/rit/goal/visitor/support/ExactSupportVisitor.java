@@ -2,13 +2,33 @@ package edu.rit.goal.visitor.support;
 
 import java.math.BigDecimal;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.rit.goal.estimator.Sampling;
 import edu.rit.goal.visitor.GraphVisitor;
+import edu.rit.goal.visitor.Matcher;
 
 public class ExactSupportVisitor extends SupportVisitor {
+	// Tasks do not split below this number of pairs.
+	private static final int MIN_TASK_SIZE = 256;
+
+	// If not null, the pairs are split in tasks that run in the pool.
+	ForkJoinPool pool;
+
+	// The matcher of each thread of the pool in the current visit, with the plan and the budget of the matcher of this
+	// visitor; its memo is kept across the tasks of the thread.
+	Map<Thread, Matcher> matchers = new ConcurrentHashMap<>();
+
 	public ExactSupportVisitor(GraphVisitor visitor, int x, int y) {
+		this(visitor, x, y, null);
+	}
+
+	public ExactSupportVisitor(GraphVisitor visitor, int x, int y, ForkJoinPool pool) {
 		super(visitor, x, y, new Sampling<>(false, false, null));
+		this.pool = pool;
 	}
 
 	@Override
@@ -22,9 +42,125 @@ public class ExactSupportVisitor extends SupportVisitor {
 		});
 	}
 
+	// What a task found; the counters of the tasks are added up at the end.
+	private static class Counts {
+		long support, matchingCalls, time;
+		int visited;
+
+		Counts add(Counts other) {
+			support += other.support;
+			matchingCalls += other.matchingCalls;
+			time += other.time;
+			visited += other.visited;
+			return this;
+		}
+	}
+
+	private class VisitTask extends RecursiveTask<Counts> {
+		private static final long serialVersionUID = 2803452617352934315L;
+
+		int from, to, taskSize;
+
+		VisitTask(int from, int to, int taskSize) {
+			super();
+			this.from = from;
+			this.to = to;
+			this.taskSize = taskSize;
+		}
+
+		@Override
+		protected Counts compute() {
+			if (to - from <= taskSize)
+				return visit(from, to);
+
+			int mid = (from + to) >>> 1;
+
+			VisitTask left = new VisitTask(from, mid, taskSize);
+			left.fork();
+
+			return new VisitTask(mid, to, taskSize).compute().add(left.join());
+		}
+	}
+
+	@Override
+	protected void visit() {
+		if (pool == null) {
+			super.visit();
+			return;
+		}
+
+		getTime(startingTime);
+
+		if (previousMatching != null)
+			newSuccess(previousMatching);
+
+		getTime(endingTime);
+
+		this.listeners.forEach(l -> l.addToTimeElapsed(startingTime, endingTime));
+
+		// A few tasks per thread so that they can be stolen.
+		int taskSize = Math.max(MIN_TASK_SIZE, viablePairs.size() / (pool.getParallelism() * 8));
+
+		Counts counts;
+		try {
+			counts = pool.invoke(new VisitTask(0, viablePairs.size(), taskSize));
+
+			// They go to the report and the stats of this visitor, which are added to the ones of the graph visitor.
+			for (Matcher m : matchers.values()) {
+				matcher.getPlanReport().merge(m.getPlanReport());
+				matcher.getMatchStats().merge(m.getMatchStats());
+			}
+		} finally {
+			matchers.clear();
+		}
+
+		totalVisited = counts.visited;
+
+		// Each task measured the CPU time of its own thread.
+		AtomicLong zero = new AtomicLong(), time = new AtomicLong(counts.time);
+
+		listeners.forEach(l -> {
+			l.addToTimeElapsed(zero, time);
+			l.incrementMetric(BigDecimal.valueOf(counts.support));
+			l.updateCalls(counts.matchingCalls);
+		});
+	}
+
+	// Same as the sequential visit, but with the matcher of the thread, and without touching the listeners.
+	private Counts visit(int from, int to) {
+		long start = getCpuTime();
+
+		Counts ret = new Counts();
+
+		Matcher matcher = matchers.computeIfAbsent(Thread.currentThread(), t -> visitor
+				.withMemo(visitor.newMatcher().setPlan(this.matcher.getPlan()).setBudget(this.matcher.getBudget())));
+
+		for (int i = from; i < to && !isOutOfBudget(); i++) {
+			ret.visited++;
+
+			int position = viablePairs.get(i), s = candidatePairs.getSubject(position),
+					o = candidatePairs.getObject(position);
+
+			if (!visitor.isInHeadCandidates(s, o))
+				continue;
+
+			boolean found = matcher.clear().bind(x, s).bind(y, o).exists(m -> {
+			});
+
+			ret.matchingCalls += matcher.getMatchingCalls();
+
+			if (found)
+				ret.support++;
+		}
+
+		ret.time = getCpuTime() - start;
+
+		return ret;
+	}
+
 	@Override
 	public boolean stop() {
-		return totalVisited == candidatePairs.size();
+		return totalVisited == viablePairs.size();
 	}
 
 	@Override
@@ -0,0 +1,346 @@
+package edu.rit.goal.visitor.support;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.collections.api.factory.primitive.IntLongMaps;
+import org.eclipse.collections.api.map.primitive.MutableIntLongMap;
+import org.jgrapht.graph.DirectedMultigraph;
+
+import edu.rit.goal.graph.GraphDatabase;
+import edu.rit.goal.graph.LabeledEdge;
+import edu.rit.goal.graph.index.PairCursor;
+import edu.rit.goal.metric.RuleMatchCount;
+import edu.rit.goal.visitor.GraphVisitor;
+import edu.rit.goal.visitor.Matcher;
+
+// Support and number of body matchings of each head pair of rules whose body is a tree (or a forest) once the atoms
+// between the same two variables are taken together, which is what the language bias mostly produces. Instead of
+// enumerating the matchings, we root the body at x (and y, if it is not reached from x) and count bottom-up: the
+// matchings of the subtree of a variable with a value are the product, over its children, of the sum of the matchings
+// of the child over the neighbors of the value. Leaves are just degrees, and counts are remembered per value, so hubs
+// are not a problem. Like in the matcher, variables cannot take the values of x and y, and neighboring variables have
+// different values; the matcher also keeps apart variables that are not neighbors, so counts are the same as the
+// matcher's only if every two variables other than x and y are neighbors (see isExact), e.g., chains of up to three
+// atoms, and an upper bound otherwise; then, the matcher confirms the pairs with some count before they are support.
+// Counts of hubs can be beyond a long; they stay at Long.MAX_VALUE and the metric
+// is then truncated.
+public class MatchCountVisitor extends ExactSupportVisitor {
+	// A variable of the body, rooted at x or y.
+	static class Node {
+		int variable;
+		Node parent;
+		List<Node> children = new ArrayList<>();
+
+		// The atoms to the parent, and whether the parent is their subject.
+		LabeledEdge[] edges;
+		boolean[] fromParent;
+
+		// Its value is x's or y's.
+		boolean grounded;
+
+		// Matchings of the subtree per value, for the current pair.
+		MutableIntLongMap memo = IntLongMaps.mutable.empty();
+		PairCursor cursor = new PairCursor();
+	}
+
+	Node xRoot, yRoot;
+	List<Node> nodes;
+	boolean exact;
+
+	GraphDatabase db;
+
+	// Pairs gone over in the current visit; these are the calls of the budget.
+	long work;
+
+	// Some count of the current visit was beyond a long.
+	boolean saturated;
+
+	public MatchCountVisitor(GraphVisitor visitor, int x, int y) {
+		super(visitor, x, y);
+
+		nodes = getTree(visitor);
+		if (nodes == null)
+			throw new RuntimeException("Not a tree rule: " + visitor.query);
+
+		for (Node n : nodes)
+			if (n.variable == x)
+				xRoot = n;
+			else if (n.variable == y && n.parent == null)
+				yRoot = n;
+
+		exact = isExact(nodes);
+	}
+
+	public static boolean isTree(GraphVisitor visitor) {
+		return getTree(visitor) != null;
+	}
+
+	public static boolean isExact(GraphVisitor visitor) {
+		List<Node> nodes = getTree(visitor);
+		return nodes != null && isExact(nodes);
+	}
+
+	private static boolean isExact(List<Node> nodes) {
+		for (Node n : nodes)
+			for (Node m : nodes)
+				if (n != m && !n.grounded && !m.grounded && n.parent != m && m.parent != n)
+					return false;
+		return true;
+	}
+
+	// Whether the counts are the same as the number of matchings found by the matcher.
+	public boolean isExact() {
+		return exact;
+	}
+
+	// The variables reached from x and then from y, or null if the body has cycles or variables that are not connected
+	// to x or y.
+	private static List<Node> getTree(GraphVisitor visitor) {
+		DirectedMultigraph<Integer, LabeledEdge> query = visitor.query;
+
+		if (visitor.head == null)
+			return null;
+
+		int x = query.getEdgeSource(visitor.head), y = query.getEdgeTarget(visitor.head);
+
+		List<Node> ret = new ArrayList<>();
+
+		for (int root : new int[] { x, y }) {
+			if (ret.stream().anyMatch(n -> n.variable == root))
+				continue;
+
+			Node r = new Node();
+			r.variable = root;
+			r.edges = new LabeledEdge[0];
+			r.fromParent = new boolean[0];
+			ret.add(r);
+
+			// Breadth first; ret grows as we go.
+			for (int i = ret.size() - 1; i < ret.size(); i++) {
+				Node n = ret.get(i);
+
+				for (LabeledEdge e : query.edgesOf(n.variable)) {
+					if (e == visitor.head)
+						continue;
+
+					// Queries have no self-loops.
+					int u = query.getEdgeSource(e), up = query.getEdgeTarget(e), other = u == n.variable ? up : u;
+					if (n.parent != null && other == n.parent.variable)
+						continue;
+
+					Node child = null;
+					for (Node c : n.children)
+						if (c.variable == other)
+							child = c;
+
+					if (child == null) {
+						// Reached before through another variable.
+						if (ret.stream().anyMatch(c -> c.variable == other))
+							return null;
+
+						child = new Node();
+						child.variable = other;
+						child.parent = n;
+						child.edges = new LabeledEdge[0];
+						child.fromParent = new boolean[0];
+						n.children.add(child);
+						ret.add(child);
+					}
+
+					child.edges = append(child.edges, e);
+					child.fromParent = append(child.fromParent, u == n.variable);
+				}
+			}
+		}
+
+		if (ret.size() != query.vertexSet().size())
+			return null;
+
+		for (Node n : ret)
+			n.grounded = n.variable == x || n.variable == y;
+
+		return ret;
+	}
+
+	private static LabeledEdge[] append(LabeledEdge[] edges, LabeledEdge e) {
+		LabeledEdge[] ret = Arrays.copyOf(edges, edges.length + 1);
+		ret[edges.length] = e;
+		return ret;
+	}
+
+	private static boolean[] append(boolean[] fromParent, boolean b) {
+		boolean[] ret = Arrays.copyOf(fromParent, fromParent.length + 1);
+		ret[fromParent.length] = b;
+		return ret;
+	}
+
+	@Override
+	protected void visit() {
+		getTime(startingTime);
+
+		if (previousMatching != null)
+			newSuccess(previousMatching);
+
+		db = visitor.getDb();
+		work = 0;
+		saturated = false;
+
+		long support = 0, start = startSearch(), checks = 0;
+
+		// Upper bounds can count pairs that have no matchings. The calls of the searches are spent with the rest of the
+		// work, so that matcher has no budget.
+		Matcher matcher = exact ? null : visitor.withMemo(visitor.newMatcher().setPlan(this.matcher.getPlan()));
+
+		int i = 0;
+		for (; i < viablePairs.size(); i++) {
+			if (checkBudget(work, start, ++checks))
+				break;
+
+			int position = viablePairs.get(i), s = candidatePairs.getSubject(position),
+					o = candidatePairs.getObject(position);
+
+			long count = getCount(s, o);
+
+			if (count > 0 && matcher != null) {
+				boolean found = matcher.clear().bind(x, s).bind(y, o).exists(m -> {
+				});
+				work += matcher.getMatchingCalls();
+
+				if (!found)
+					continue;
+			}
+
+			if (count > 0) {
+				support++;
+				listeners.forEach(l -> l.addMatchCount(s, o, count));
+			}
+		}
+
+		totalVisited = i;
+		endSearch(work, start);
+
+		if (matcher != null) {
+			this.matcher.getPlanReport().merge(matcher.getPlanReport());
+			this.matcher.getMatchStats().merge(matcher.getMatchStats());
+		}
+
+		getTime(endingTime);
+
+		long found = support, calls = work;
+		listeners.forEach(l -> {
+			l.addToTimeElapsed(startingTime, endingTime);
+			l.incrementMetric(BigDecimal.valueOf(found));
+			l.updateCalls(calls);
+			if (saturated)
+				l.getMetric().setTruncated(true);
+			if (!exact && l.getMetric() instanceof RuleMatchCount)
+				((RuleMatchCount) l.getMetric()).setUpperBounds(true);
+		});
+	}
+
+	// Body matchings of the pair.
+	long getCount(int s, int o) {
+		for (Node n : nodes)
+			n.memo.clear();
+
+		long ret = count(xRoot, s, s, o);
+		if (ret > 0 && yRoot != null)
+			ret = multiply(ret, count(yRoot, o, s, o));
+		return ret;
+	}
+
+	// Matchings of the subtree of the node with the value.
+	private long count(Node n, int value, int s, int o) {
+		if (n.children.isEmpty())
+			return 1;
+
+		if (n.memo.containsKey(value))
+			return n.memo.get(value);
+
+		long ret = 1;
+		for (Node c : n.children) {
+			long sum = sum(c, value, s, o);
+			if (sum == 0) {
+				ret = 0;
+				break;
+			}
+			ret = multiply(ret, sum);
+		}
+
+		n.memo.put(value, ret);
+		return ret;
+	}
+
+	// Matchings of the subtree of the child over the neighbors of the value of its parent.
+	private long sum(Node c, int value, int s, int o) {
+		if (c.grounded) {
+			int v = c.variable == x ? s : o;
+			return isConnected(c, value, v, 0) ? count(c, v, s, o) : 0;
+		}
+
+		// A leaf: the degree of the value, but for the neighbors that cannot be taken.
+		if (c.children.isEmpty() && c.edges.length == 1) {
+			work++;
+			long ret = c.fromParent[0] ? db.getSubjectDegree(c.edges[0].predicate, value)
+					: db.getObjectDegree(c.edges[0].predicate, value);
+			if (isConnected(c, value, s, 0))
+				ret--;
+			if (o != s && isConnected(c, value, o, 0))
+				ret--;
+			if (value != s && value != o && isConnected(c, value, value, 0))
+				ret--;
+			return ret;
+		}
+
+		PairCursor cursor = c.cursor;
+		if (c.fromParent[0])
+			db.getCandidatesBySubject(c.edges[0].predicate, value, cursor);
+		else
+			db.getCandidatesByObject(c.edges[0].predicate, value, cursor);
+
+		work += cursor.size();
+
+		long ret = 0;
+		while (cursor.next()) {
+			int v = c.fromParent[0] ? cursor.object() : cursor.subject();
+
+			if (v == s || v == o || v == value || !isConnected(c, value, v, 1))
+				continue;
+
+			ret = add(ret, count(c, v, s, o));
+		}
+		return ret;
+	}
+
+	// Counts are not negative, so they only go beyond a long upwards.
+	private long multiply(long a, long b) {
+		if (a != 0 && b > Long.MAX_VALUE / a) {
+			saturated = true;
+			return Long.MAX_VALUE;
+		}
+		return a * b;
+	}
+
+	private long add(long a, long b) {
+		if (b > Long.MAX_VALUE - a) {
+			saturated = true;
+			return Long.MAX_VALUE;
+		}
+		return a + b;
+	}
+
+	// Whether the atoms between the child and its parent, from the given one on, hold with the values.
+	private boolean isConnected(Node c, int parentValue, int value, int from) {
+		for (int i = from; i < c.edges.length; i++) {
+			work++;
+			int p = c.edges[i].predicate;
+			if (!(c.fromParent[i] ? db.hasTriple(p, parentValue, value) : db.hasTriple(p, value, parentValue)))
+				return false;
+		}
+		return true;
+	}
+
+}
@@ -2,32 +2,38 @@ package edu.rit.goal.visitor.support;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
-import java.util.function.Predicate;
 
-import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.factory.primitive.IntLists;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.eclipse.collections.impl.list.Interval;
 
 import edu.rit.goal.estimator.Sampling;
+import edu.rit.goal.graph.index.PairCursor;
+import edu.rit.goal.visitor.CandidateSet;
 import edu.rit.goal.visitor.GraphVisitor;
 import edu.rit.goal.visitor.RuleMetricListener;
 import edu.rit.goal.visitor.RuleMetricVisitor;
 
 public abstract class SupportVisitor extends RuleMetricVisitor {
-	Sampling<Entry<Integer, Integer>> sampling;
+	// We sample positions of the candidate pairs.
+	Sampling<Integer> sampling;
 
-	public SupportVisitor(GraphVisitor visitor, int x, int y, Sampling<Entry<Integer, Integer>> sampling) {
+	public SupportVisitor(GraphVisitor visitor, int x, int y, Sampling<Integer> sampling) {
 		super(visitor, x, y);
 
 		this.sampling = sampling;
 	}
 
-	MutableList<Entry<Integer, Integer>> candidatePairs;
+	PairCursor candidatePairs = new PairCursor();
 	int totalVisited = 0;
 
+	// Positions of the candidate pairs whose subject and object are candidates of x and y (see GraphVisitor.getCandidates);
+	// the rest cannot have matchings, so they are neither searched nor sampled, and are not part of the population.
+	MutableIntList viablePairs = IntLists.mutable.empty();
+
 	Collection<RuleMetricListener> listeners;
 
 	// Sometimes, we know a pair that worked because of a random walk.
@@ -39,14 +45,18 @@ public abstract class SupportVisitor extends RuleMetricVisitor {
 
 		// We are starting!
 		this.listeners.forEach(l -> l.reset());
+		clearStats();
+		startBudget();
 
 		{
 			// Pre-visit.
 			getTime(startingTime);
 
-			visitor.getOrder(Set.of(x, y));
+			matcher.setPlan(Set.of(x, y));
+
+			visitor.getDb().getCandidates(visitor.head.predicate, candidatePairs);
 
-			candidatePairs = visitor.getDb().getCandidatesAsList(visitor.head.predicate);
+			filterPairs();
 
 			getTime(endingTime);
 
@@ -58,16 +68,48 @@ public abstract class SupportVisitor extends RuleMetricVisitor {
 		visit();
 
 		endVisit();
+
+		reportStats(listeners);
+		endBudget(listeners);
 	}
 
 	public void compute(Collection<RuleMetricListener> listeners) {
 		compute(listeners, null);
 	}
 
-	private void visit() {
+	// The pairs come grouped by subject, so each subject is only looked up once.
+	private void filterPairs() {
+		viablePairs.clear();
+
+		CandidateSet xCandidates = visitor.getCandidates(x), yCandidates = visitor.getCandidates(y);
+
+		int current = -1;
+		boolean viable = false;
+
+		candidatePairs.rewind();
+		for (int i = 0; candidatePairs.next(); i++) {
+			int s = candidatePairs.subject();
+
+			if (i == 0 || s != current) {
+				current = s;
+				viable = xCandidates == null || xCandidates.contains(s);
+			}
+
+			if (viable && (yCandidates == null || yCandidates.contains(candidatePairs.object())))
+				viablePairs.add(i);
+		}
+	}
+
+	protected void visit() {
 		getTime(startingTime);
 
-		sampling.init(candidatePairs.collect(x -> x));
+		// Positions are only boxed if some pair was filtered.
+		if (viablePairs.isEmpty())
+			sampling.init(List.of());
+		else if (viablePairs.size() == candidatePairs.size())
+			sampling.init(Interval.zeroTo(candidatePairs.size() - 1));
+		else
+			sampling.init(viablePairs.collect(i -> i));
 
 		if (previousMatching != null)
 			newSuccess(previousMatching);
@@ -76,51 +118,47 @@ public abstract class SupportVisitor extends RuleMetricVisitor {
 
 		this.listeners.forEach(l -> l.addToTimeElapsed(startingTime, endingTime));
 
+		// There is nothing to search.
+		if (viablePairs.isEmpty())
+			return;
+
+		// Pairs that share a subject or an object repeat searches, which the memo remembers.
+		visitor.withMemo(matcher);
+
 		while (true) {
 			getTime(startingTime);
 
 			totalVisited++;
 
-			Entry<Integer, Integer> pair = sampling.getNext();
+			int position = sampling.getNext();
 
-			int s = pair.getKey(), o = pair.getValue();
+			int s = candidatePairs.getSubject(position), o = candidatePairs.getObject(position);
 
 			if (!visitor.isInHeadCandidates(s, o))
 				continue;
 
 			// Add s and o to the partial matching.
-			Map<Integer, Integer> partialMatching = new HashMap<>();
-
-			partialMatching.put(x, s);
-			partialMatching.put(y, o);
+			matcher.clear().bind(x, s).bind(y, o);
 
-			AtomicInteger oneFound = new AtomicInteger();
 			Map<Integer, Integer> matching = new HashMap<>();
-			Consumer<Map<Integer, Integer>> matchingFound = m -> {
-				oneFound.incrementAndGet();
-				matching.putAll(m);
-			};
-
-			Predicate<Void> stopping = z -> {
-				return oneFound.get() > 0;
-			};
 
-			visitor.matching(0, partialMatching, matchingFound, visitor::toIterate, stopping);
+			// We only copy the first matching, and then we stop.
+			boolean found = matcher.exists(m -> matching.putAll(m.toMap()));
 
 			getTime(endingTime);
 
 			this.listeners.forEach(l -> l.addToTimeElapsed(startingTime, endingTime));
 
 			listeners.forEach(l -> {
-				l.updateCalls(visitor.matchingCalls.get());
+				l.updateCalls(matcher.getMatchingCalls());
 			});
 
-			if (oneFound.get() == 0)
+			if (!found)
 				newFailure();
 			else
 				newSuccess(matching);
 
-			boolean stop = stop();
+			boolean stop = stop() || isOutOfBudget();
 
 			if (stop)
 				// We are done!